@@ -0,0 +1,33 @@
+package com.example.fbct2;
+
+import android.app.Application;
+
+import com.example.fbct2.firebase.FirestoreChatBackend;
+import com.example.fbct2.firebase.PresenceManager;
+import com.example.fbct2.network.NotificationQueue;
+import com.example.fbct2.utilities.ChatBackend;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+public class ChatApplication extends Application {
+
+    private ChatBackend chatBackend;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PresenceManager.getInstance(this).start();
+        NotificationQueue.getInstance(this).resume();
+    }
+
+    public synchronized ChatBackend getChatBackend() {
+        if (chatBackend == null) {
+            chatBackend = new FirestoreChatBackend(FirebaseFirestore.getInstance());
+        }
+        return chatBackend;
+    }
+
+    // Permite reemplazar el servidor, por ejemplo con InMemoryChatBackend en pruebas de carga
+    public synchronized void setChatBackend(ChatBackend chatBackend) {
+        this.chatBackend = chatBackend;
+    }
+}
@@ -1,56 +1,150 @@
 package com.example.fbct2.activities;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.fbct2.ChatApplication;
+import com.example.fbct2.R;
 import com.example.fbct2.adapters.ChatAdapter;
+import com.example.fbct2.database.MessageStore;
 import com.example.fbct2.databinding.ActivityChatBinding;
+import com.example.fbct2.firebase.NotificationAggregator;
+import com.example.fbct2.firebase.PresenceManager;
+import com.example.fbct2.listeners.MessageListener;
 import com.example.fbct2.models.ChatMessage;
 import com.example.fbct2.models.User;
-import com.example.fbct2.network.ApiClient;
-import com.example.fbct2.network.ApiService;
+import com.example.fbct2.network.NotificationQueue;
+import com.example.fbct2.utilities.AvatarLoader;
+import com.example.fbct2.utilities.ChatBackend;
+import com.example.fbct2.utilities.ChatSession;
 import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.MessageBuffer;
+import com.example.fbct2.utilities.MessageCursor;
+import com.example.fbct2.utilities.Metrics;
 import com.example.fbct2.utilities.PreferenceManager;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.EventListener;
+import com.example.fbct2.utilities.TimestampFormatter;
+import com.example.fbct2.utilities.Tracing;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+public class ChatActivity extends BaseActivity implements MessageListener {
+    private static final String[] REACTIONS = {"👍", "❤️", "😂", "😮", "😢", "🙏"};
+    private static final Metrics.Histogram SNAPSHOT_TIME = Metrics.getInstance().histogram("chat.snapshot");
+    private static final Metrics.Counter SNAPSHOT_CHANGES = Metrics.getInstance().counter("chat.snapshot.changes");
+    // Desde el commit del lote hasta que el servidor lo confirma, un valor por intento
+    private static final Metrics.Histogram SEND_TIME = Metrics.getInstance().histogram("chat.send");
+    private static final Metrics.Counter SEND_FAILURES = Metrics.getInstance().counter("chat.send.failed");
+    private static final Metrics.Histogram NOTIFY_TIME = Metrics.getInstance().histogram("chat.notification.enqueue");
 
-public class ChatActivity extends BaseActivity {
     private ActivityChatBinding binding;
     private User receiverUser;
-    private List<ChatMessage> chatMessages;
+    private MessageBuffer messageBuffer;
     private ChatAdapter chatAdapter;
     private PreferenceManager preferenceManager;
     private FirebaseFirestore database;
-    private String conversionId = null;
+    private String conversationKey;
     private Boolean isReceiverAvailable = false;
+    private Long receiverAvailability;
+    private Date receiverLastSeen;
+    private final Handler availabilityHandler = new Handler(Looper.getMainLooper());
+    private final Runnable availabilityRunnable = this::updateReceiverAvailability;
+    private final Handler sendHandler = new Handler(Looper.getMainLooper());
+    private MessageStore messageStore;
+    private ChatBackend chatBackend;
+    private ChatSession chatSession;
+    private final MessageStore.MessageObserver messageObserver = new MessageStore.MessageObserver() {
+        @Override
+        public void onMessagesAdded(List<ChatMessage> messages) {
+            showMessages(messages);
+        }
+
+        @Override
+        public void onMessagesChanged(List<ChatMessage> messages) {
+            updateMessages(messages);
+        }
+
+        @Override
+        public void onMessagesRemoved(List<String> messageIds) {
+            removeMessages(messageIds);
+        }
+    };
+    private final ChatSession.Listener sessionListener = new ChatSession.Listener() {
+        @Override
+        public void onMessageSent(ChatMessage chatMessage) {
+            confirmMessage(chatMessage);
+        }
+
+        @Override
+        public void onSendFailed(ChatMessage chatMessage) {
+            showToast("No se pudo enviar el mensaje, se reintentará más tarde");
+        }
+
+        @Override
+        public void onRemoteMessages() {
+            if (messageBuffer.isEmpty()) {
+                binding.progressBar.setVisibility(View.GONE);
+            }
+        }
+
+        // Lo local más viejo que la última página quedaría pegado a ella sin los mensajes del medio
+        @Override
+        public void onHistoryGap(MessageCursor oldestLoaded) {
+            List<String> staleIds = new ArrayList<>();
+            for (ChatMessage chatMessage : messageBuffer.getMessages()) {
+                if (!chatMessage.pending && MessageCursor.of(chatMessage).compareTo(oldestLoaded) < 0) {
+                    staleIds.add(chatMessage.id);
+                }
+            }
+            removeMessages(staleIds);
+            hasOlderMessages = true;
+        }
+    };
+    private final ChatSession.Tracer sessionTracer = new ChatSession.Tracer() {
+        @Override
+        public long beginSnapshot(int changes) {
+            SNAPSHOT_CHANGES.add(changes);
+            return Tracing.begin("ChatActivity.onMessageSnapshot");
+        }
+
+        @Override
+        public void endSnapshot(long start) {
+            Tracing.end(SNAPSHOT_TIME, start);
+        }
+
+        @Override
+        public long beginSend(int cookie) {
+            return Tracing.beginAsync("ChatActivity.send", cookie);
+        }
+
+        @Override
+        public void endSend(int cookie, long start, boolean success) {
+            Tracing.endAsync("ChatActivity.send", cookie, SEND_TIME, start);
+            if (!success) {
+                SEND_FAILURES.increment();
+            }
+        }
+    };
+    private boolean isLoadingOlderMessages = false;
+    private boolean hasOlderMessages = true;
+    private final TimestampFormatter timestampFormatter = new TimestampFormatter(Locale.getDefault(), ZoneId.systemDefault());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -60,17 +154,38 @@ public class ChatActivity extends BaseActivity {
         setListeners();
         loadReceiverDetails();
         init();
-        listenerMessages();
+        loadLocalMessages();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        availabilityHandler.removeCallbacks(availabilityRunnable);
+        sendHandler.removeCallbacksAndMessages(null);
+        if (chatSession != null) {
+            chatSession.close();
+        }
+        if (messageStore != null) {
+            messageStore.removeMessageObserver(conversationKey, messageObserver);
+        }
     }
 
     private void init() {
         preferenceManager = new PreferenceManager(getApplicationContext());
-        chatMessages = new ArrayList<>();
-        chatAdapter = new ChatAdapter(chatMessages, getBitmapFormEncodedString(receiverUser.image),
-                preferenceManager.getString(Constants.KEY_USER_ID));
+        messageBuffer = new MessageBuffer();
+        chatAdapter = new ChatAdapter(messageBuffer.getMessages(), null,
+                preferenceManager.getString(Constants.KEY_USER_ID), this);
         binding.chatRecyclerView.setAdapter(chatAdapter);
+        loadReceiverProfileImage();
         database = FirebaseFirestore.getInstance();
-        checkForConversion(); // Verificar si existe una conversación ya creada
+        chatBackend = ((ChatApplication) getApplication()).getChatBackend();
+        messageStore = MessageStore.getInstance(this);
+        chatSession = new ChatSession(chatBackend, messageStore, preferenceManager, sendHandler::postDelayed,
+                preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id,
+                this::getConversationParticipants, sessionListener);
+        chatSession.setTracer(sessionTracer);
+        conversationKey = chatSession.conversationKey();
+        loadMissingReceiverAvatar();
     }
 
     private void sendMessage() {
@@ -81,110 +196,162 @@ public class ChatActivity extends BaseActivity {
             return;
         }
 
-        HashMap<String, Object> message = new HashMap<>();
-        message.put(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID));
-        message.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
-        message.put(Constants.KEY_MESSAGE, messageText);
-        message.put(Constants.KEY_TIMESTAMP, new Date());
-
-        // Enviar mensaje a la base de datos
-        database.collection(Constants.KEY_COLLECTION_CHAT).add(message)
-                .addOnSuccessListener(documentReference -> {
-                    if (conversionId != null) {
-                        // Si ya existe una conversación, la actualizamos
-                        updateConversion(messageText);
-                    } else {
-                        // Verifica si ya existe una conversación antes de crear una nueva
-                        checkForExistingConversationAndCreate(messageText);
-                    }
-                    binding.inputMessage.setText(null);
-                });
+        ChatMessage pendingMessage = chatSession.send(messageText);
+        showMessages(Collections.singletonList(pendingMessage));
+        binding.inputMessage.setText(null);
 
         if (!isReceiverAvailable) {
-            sendNotification(messageText);
+            sendNotification(pendingMessage);
         }
     }
 
+    // Las conversaciones guardan nombres e ids de avatar de ambos participantes
+    private Map<String, Object> getConversationParticipants() {
+        Map<String, Object> participants = new HashMap<>();
+        participants.put(Constants.KEY_SENDER_NAME, preferenceManager.getString(Constants.KEY_NAME));
+        participants.put(Constants.KEY_SENDER_IMAGE_ID, getSenderImageId());
+        participants.put(Constants.KEY_RECEIVER_NAME, receiverUser.name);
+        participants.put(Constants.KEY_RECEIVER_IMAGE_ID, getReceiverImageId());
+        return participants;
+    }
 
-    private void checkForConversionAndCreate(String messageText) {
-        checkForConversationRemotely(preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id);
-        checkForConversationRemotely(receiverUser.id, preferenceManager.getString(Constants.KEY_USER_ID));
+    // Pinta de inmediato lo que ya está en el almacén local, incluso sin conexión; Firestore solo trae lo que falta
+    private void loadLocalMessages() {
+        messageStore.observeMessages(conversationKey, messageObserver);
+        messageStore.loadLatestMessages(conversationKey, Constants.MESSAGES_PAGE_SIZE, messages -> {
+            showMessages(messages);
+            chatSession.open(messages);
+            scrollToSearchResult();
+        });
+    }
 
-        if (conversionId == null) {
-            HashMap<String, Object> conversion = new HashMap<>();
-            conversion.put(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID));
-            conversion.put(Constants.KEY_SENDER_NAME, preferenceManager.getString(Constants.KEY_NAME));
-            conversion.put(Constants.KEY_SENDER_IMAGE, preferenceManager.getString(Constants.KEY_IMAGE));
-            conversion.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
-            conversion.put(Constants.KEY_RECEIVER_NAME, receiverUser.name);
-            conversion.put(Constants.KEY_RECEIVER_IMAGE, receiverUser.image);
-            conversion.put(Constants.KEY_LAST_MESSAGE, messageText);
-            conversion.put(Constants.KEY_TIMESTAMP, new Date());
-            addConversion(conversion);
+    // Al abrir desde la búsqueda se cargan del almacén los mensajes entre el resultado y la página actual
+    private void scrollToSearchResult() {
+        String messageId = getIntent().getStringExtra(Constants.KEY_MESSAGE_ID);
+        long timestamp = getIntent().getLongExtra(Constants.KEY_TIMESTAMP, -1);
+        if (messageId == null || timestamp < 0 || messageBuffer.isEmpty()) {
+            return;
         }
+        Date date = new Date(timestamp);
+        if (!date.before(messageBuffer.first().dateObject)) {
+            scrollToMessage(messageId, date);
+            return;
+        }
+        messageStore.loadMessagesBetween(conversationKey, date, MessageCursor.of(messageBuffer.first()), messages -> {
+            showMessages(messages);
+            scrollToMessage(messageId, date);
+        });
     }
 
-    private void addConversion(HashMap<String, Object> conversion) {
-        database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
-                .add(conversion)
-                .addOnSuccessListener(documentReference -> conversionId = documentReference.getId());
+    private void scrollToMessage(String messageId, Date date) {
+        int position = messageBuffer.indexOf(messageId, date);
+        if (position >= 0) {
+            binding.chatRecyclerView.scrollToPosition(position);
+        }
     }
 
-    private void updateConversion(String message) {
-        if (conversionId != null) {
-            DocumentReference documentReference = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversionId);
-            documentReference.update(Constants.KEY_LAST_MESSAGE, message, Constants.KEY_TIMESTAMP, new Date());
+    // Todo lo que llega de Firestore pasa por el almacén; la pantalla solo muestra lo que este reporta como nuevo
+    private void showMessages(List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        for (ChatMessage chatMessage : messages) {
+            chatMessage.dateTime = getReadableDateTime(chatMessage.dateObject);
+            // Un eco de un id ya presente no se inserta; si trae la confirmación, se aplica en su lugar
+            if (!chatMessage.pending && messageBuffer.contains(chatMessage.id)) {
+                confirmMessage(chatMessage);
+            }
+        }
+        boolean wasEmpty = messageBuffer.isEmpty();
+        ChatMessage previousLast = messageBuffer.last();
+        messageBuffer.insertAll(messages, chatAdapter::notifyItemRangeInserted);
+        if (!wasEmpty && messageBuffer.last() != previousLast) {
+            binding.chatRecyclerView.smoothScrollToPosition(messageBuffer.size() - 1);
+        }
+        binding.chatRecyclerView.setVisibility(View.VISIBLE);
+        binding.progressBar.setVisibility(View.GONE);
+    }
+
+    // Cada cambio reemplaza al mensaje en su posición y solo esa fila se vuelve a pintar
+    private void updateMessages(List<ChatMessage> messages) {
+        for (ChatMessage chatMessage : messages) {
+            ChatMessage current = messageBuffer.find(chatMessage.id);
+            if (current == null) {
+                continue;
+            }
+            // El estado del envío y la fecha mostrada son locales; el cambio no los trae
+            chatMessage.pending = current.pending;
+            chatMessage.dateObject = current.dateObject;
+            chatMessage.dateTime = current.dateTime;
+            int position = messageBuffer.replace(chatMessage);
+            if (position >= 0) {
+                chatAdapter.notifyItemChanged(position);
+            }
         }
     }
 
+    private void removeMessages(List<String> messageIds) {
+        for (String messageId : messageIds) {
+            int position = messageBuffer.remove(messageId);
+            if (position >= 0) {
+                chatAdapter.notifyItemRemoved(position);
+            }
+        }
+    }
 
-    private void listenerMessages() {
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverUser.id)
-                .addSnapshotListener(eventListener);
-        database.collection(Constants.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constants.KEY_SENDER_ID, receiverUser.id)
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
-                .addSnapshotListener(eventListener);
+    private void confirmMessage(ChatMessage chatMessage) {
+        int position = messageBuffer.indexOf(chatMessage.id, chatMessage.dateObject);
+        if (position >= 0 && messageBuffer.get(position).pending) {
+            messageBuffer.get(position).pending = false;
+            chatAdapter.notifyItemChanged(position);
+        }
     }
 
-    private final EventListener<QuerySnapshot> eventListener = (value, error) -> {
-        if (error != null) {
+    // Primero se busca en el almacén local y solo si no alcanza para una página se va a Firestore
+    private void loadOlderMessages() {
+        if (isLoadingOlderMessages || messageBuffer.isEmpty()) {
             return;
         }
-        if (value != null) {
-            int count = chatMessages.size();
-            for (DocumentChange documentChange : value.getDocumentChanges()) {
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    ChatMessage chatMessage = new ChatMessage();
-                    chatMessage.senderId = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
-                    chatMessage.receiverId = documentChange.getDocument().getString(Constants.KEY_RECEIVER_ID);
-                    chatMessage.message = documentChange.getDocument().getString(Constants.KEY_MESSAGE);
-                    chatMessage.dateTime = getReadableDateTime(documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP));
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constants.KEY_TIMESTAMP);
-                    chatMessages.add(chatMessage);
-                }
-            }
-            Collections.sort(chatMessages, (obj1, obj2) -> obj1.dateObject.compareTo(obj2.dateObject));
-            if (count == 0) {
-                chatAdapter.notifyDataSetChanged();
-            } else {
-                chatAdapter.notifyItemRangeInserted(chatMessages.size(), chatMessages.size());
-                binding.chatRecyclerView.smoothScrollToPosition(chatMessages.size() - 1);
-            }
-            binding.chatRecyclerView.setVisibility(View.VISIBLE);
+        isLoadingOlderMessages = true;
+        if (chatSession.hasGapBefore(MessageCursor.of(messageBuffer.first()))) {
+            // El almacén tiene un hueco justo antes: lo local más viejo no es lo que sigue
+            loadOlderRemoteMessages(MessageCursor.of(messageBuffer.first()));
+            return;
         }
-        binding.progressBar.setVisibility(View.GONE);
-    };
+        messageStore.loadMessagesBefore(conversationKey, MessageCursor.of(messageBuffer.first()),
+                Constants.MESSAGES_PAGE_SIZE, messages -> {
+                    showMessages(messages);
+                    if (messages.size() >= Constants.MESSAGES_PAGE_SIZE || !hasOlderMessages) {
+                        isLoadingOlderMessages = false;
+                        return;
+                    }
+                    loadOlderRemoteMessages(MessageCursor.of(messageBuffer.first()));
+                });
+    }
 
-    private Bitmap getBitmapFormEncodedString(String encodedImage) {
-        if (encodedImage != null && !encodedImage.isEmpty()) {
-            byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        } else {
-            return null; // Manejar casos donde no haya imagen
-        }
+    private void loadOlderRemoteMessages(MessageCursor before) {
+        chatSession.loadOlderMessages(before, hasMore -> {
+            hasOlderMessages = hasMore;
+            isLoadingOlderMessages = false;
+        });
+    }
+
+    // El avatar de los mensajes recibidos se decodifica en segundo plano al tamaño de item_container_received_message
+    private void loadReceiverProfileImage() {
+        int size = getResources().getDimensionPixelSize(R.dimen.message_avatar_size);
+        AvatarLoader.getInstance(this).load(receiverUser.imageId, receiverUser.image, size, bitmap -> {
+            chatAdapter.setReceiverProfileImage(bitmap);
+            // Solo se repintan los avatares en pantalla; el resto se actualiza al volver a mostrarse
+            LinearLayoutManager layoutManager = (LinearLayoutManager) binding.chatRecyclerView.getLayoutManager();
+            if (layoutManager == null) {
+                return;
+            }
+            int first = layoutManager.findFirstVisibleItemPosition();
+            int last = layoutManager.findLastVisibleItemPosition();
+            if (first != RecyclerView.NO_POSITION && last != RecyclerView.NO_POSITION) {
+                chatAdapter.notifyItemRangeChanged(first, last - first + 1, ChatAdapter.PAYLOAD_PROFILE_IMAGE);
+            }
+        });
     }
 
     private void loadReceiverDetails() {
@@ -192,12 +359,7 @@ public class ChatActivity extends BaseActivity {
         if (receiverUser != null) {
             Log.d("ChatActivity", "Receiver details loaded: " + receiverUser.name);
             binding.textName.setText(receiverUser.name);
-            Bitmap bitmap = getBitmapFormEncodedString(receiverUser.image);
-            if (bitmap != null) {
-                binding.imageProfile.setImageBitmap(bitmap);
-            } else {
-                binding.imageProfile.setImageResource(android.R.color.transparent);
-            }
+            AvatarLoader.getInstance(this).load(receiverUser.imageId, receiverUser.image, binding.imageProfile);
         } else {
             Log.e("ChatActivity", "Receiver is null");
             showToast("No se pudo cargar la información del receptor.");
@@ -207,153 +369,239 @@ public class ChatActivity extends BaseActivity {
     private void setListeners() {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
         binding.layoutSend.setOnClickListener(v -> sendMessage());
+        binding.chatRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (dy < 0 && layoutManager != null
+                        && layoutManager.findFirstVisibleItemPosition() <= Constants.MESSAGES_PREFETCH_DISTANCE) {
+                    loadOlderMessages();
+                }
+            }
+        });
     }
 
     private String getReadableDateTime(Date date) {
-        return new SimpleDateFormat("MMMM dd, yyyy - hh:mm a", Locale.getDefault()).format(date);
+        return timestampFormatter.format(date);
+    }
+
+    // Las conversaciones solo guardan el id del avatar; el propio lo migra MainActivity al abrir la sesión
+    private String getSenderImageId() {
+        return preferenceManager.getString(Constants.KEY_IMAGE_ID);
     }
 
-    private void checkForConversion() {
-        if(chatMessages.size() != 0) {
-            checkForConversationRemotely(preferenceManager.getString(Constants.KEY_USER_ID), receiverUser.id);
-            checkForConversationRemotely(receiverUser.id, preferenceManager.getString(Constants.KEY_USER_ID));
+    private String getReceiverImageId() {
+        return receiverUser.imageId;
+    }
+
+    // Un contacto que todavía tiene la imagen en línea: se sube una vez por pantalla, fuera del hilo principal
+    private void uploadReceiverAvatar() {
+        if (receiverUser.imageId != null || receiverUser.image == null) {
+            return;
         }
+        AvatarLoader.getInstance(this).upload(receiverUser.image, imageId -> receiverUser.imageId = imageId);
     }
-    private void checkForExistingConversationAndCreate(String messageText) {
-        // Verificar si ya existe una conversación en ambas direcciones (A->B y B->A)
-        database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
-                .whereEqualTo(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverUser.id)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null && task.getResult().size() > 0) {
-                        conversionId = task.getResult().getDocuments().get(0).getId();
-                        updateConversion(messageText);
-                    } else {
-                        // Verificar en la otra dirección
-                        database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
-                                .whereEqualTo(Constants.KEY_SENDER_ID, receiverUser.id)
-                                .whereEqualTo(Constants.KEY_RECEIVER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
-                                .get()
-                                .addOnCompleteListener(task2 -> {
-                                    if (task2.isSuccessful() && task2.getResult() != null && task2.getResult().size() > 0) {
-                                        conversionId = task2.getResult().getDocuments().get(0).getId();
-                                        updateConversion(messageText);
-                                    } else {
-                                        // Si no existe conversación en ambas direcciones, creamos una nueva
-                                        createNewConversation(messageText);
-                                    }
-                                });
+
+    // El listener queda atado a la actividad y se quita en onStop, así que se registra en onStart
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (receiverUser != null && receiverUser.id != null) {
+            NotificationAggregator.getInstance(this).clear(receiverUser.id);
+            listenAvailabilityOfReceiver();
+        } else {
+            showToast("No se pudo cargar la información del receptor.");
+        }
+    }
+
+    // Solo se escucha presence/{id}: disponibilidad, lastSeen y token, sin la imagen del perfil
+    private void listenAvailabilityOfReceiver() {
+        PresenceManager.presenceOf(receiverUser.id)
+                .addSnapshotListener(ChatActivity.this, (value, error) -> {
+                    if (error != null) {
+                        return;
                     }
+                    if (value != null) {
+                        receiverAvailability = value.getLong(Constants.KEY_AVAILABILITY);
+                        receiverLastSeen = value.getDate(Constants.KEY_LAST_SEEN);
+                        receiverUser.token = value.getString(Constants.KEY_FCM_TOKEN);
+                    }
+                    updateReceiverAvailability();
                 });
     }
-    private void createNewConversation(String messageText) {
-        HashMap<String, Object> conversion = new HashMap<>();
-        conversion.put(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID));
-        conversion.put(Constants.KEY_SENDER_NAME, preferenceManager.getString(Constants.KEY_NAME));
-        conversion.put(Constants.KEY_SENDER_IMAGE, preferenceManager.getString(Constants.KEY_IMAGE));
-        conversion.put(Constants.KEY_RECEIVER_ID, receiverUser.id);
-        conversion.put(Constants.KEY_RECEIVER_NAME, receiverUser.name);
-        conversion.put(Constants.KEY_RECEIVER_IMAGE, receiverUser.image);
-        conversion.put(Constants.KEY_LAST_MESSAGE, messageText);
-        conversion.put(Constants.KEY_TIMESTAMP, new Date());
 
-        database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
-                .add(conversion)
-                .addOnSuccessListener(documentReference -> conversionId = documentReference.getId());
+    // Contactos que llegan sin avatar (conversaciones antiguas): se lee el perfil una sola vez.
+    // Si el avatar sigue en línea, se sube para que la conversación guarde solo su id
+    private void loadMissingReceiverAvatar() {
+        if (receiverUser.image != null || receiverUser.imageId != null) {
+            uploadReceiverAvatar();
+            return;
+        }
+        database.collection(Constants.KEY_COLLECTION_USERS).document(receiverUser.id).get()
+                .addOnSuccessListener(documentSnapshot -> {
+                    receiverUser.image = documentSnapshot.getString(Constants.KEY_IMAGE);
+                    receiverUser.imageId = documentSnapshot.getString(Constants.KEY_IMAGE_ID);
+                    if (receiverUser.image != null || receiverUser.imageId != null) {
+                        uploadReceiverAvatar();
+                        AvatarLoader.getInstance(this).load(receiverUser.imageId, receiverUser.image, binding.imageProfile);
+                        loadReceiverProfileImage();
+                    }
+                });
     }
 
-
-    private void checkForConversationRemotely(String senderId, String receiverId) {
-        database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
-                .whereEqualTo(Constants.KEY_SENDER_ID, senderId)
-                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverId)
-                .get()
-                .addOnCompleteListener(conversionOnCompleteListener);
+    // Si el receptor deja de renovar lastSeen no llega ningún snapshot, así que se vuelve a evaluar al vencer
+    private void updateReceiverAvailability() {
+        availabilityHandler.removeCallbacks(availabilityRunnable);
+        isReceiverAvailable = PresenceManager.isOnline(receiverAvailability, receiverLastSeen);
+        if (isReceiverAvailable) {
+            binding.textAvailability.setVisibility(View.VISIBLE);
+            long expiresIn = receiverLastSeen.getTime() + PresenceManager.STALE_AFTER_MS - System.currentTimeMillis();
+            availabilityHandler.postDelayed(availabilityRunnable, Math.max(expiresIn, 0));
+        } else {
+            binding.textAvailability.setVisibility(View.GONE);
+        }
     }
 
-    private final OnCompleteListener<QuerySnapshot> conversionOnCompleteListener = task -> {
-        if (task.isSuccessful() && task.getResult() != null && task.getResult().getDocuments().size() > 0) {
-            DocumentSnapshot documentSnapshot = task.getResult().getDocuments().get(0);
-            conversionId = documentSnapshot.getId();
+    @Override
+    public void onMessageLongClicked(ChatMessage chatMessage) {
+        // Un mensaje sin confirmar todavía puede reescribirse con su texto original al reintentar el envío
+        if (chatMessage.pending) {
+            return;
         }
-    };
+        if (!chatMessage.senderId.equals(preferenceManager.getString(Constants.KEY_USER_ID))) {
+            showReactions(chatMessage);
+            return;
+        }
+        String[] actions = {getString(R.string.reaccionar), getString(R.string.editar), getString(R.string.eliminar)};
+        new AlertDialog.Builder(this)
+                .setItems(actions, (dialog, which) -> {
+                    if (which == 0) {
+                        showReactions(chatMessage);
+                    } else if (which == 1) {
+                        showEditDialog(chatMessage);
+                    } else {
+                        confirmDelete(chatMessage);
+                    }
+                })
+                .show();
+    }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-        if (receiverUser != null && receiverUser.id != null) {
-            listenAvailabilityOfReceiver();
+    // Elegir otra vez la misma reacción la quita
+    private void showReactions(ChatMessage chatMessage) {
+        new AlertDialog.Builder(this)
+                .setItems(REACTIONS, (dialog, which) -> react(chatMessage, REACTIONS[which]))
+                .show();
+    }
+
+    /*
+     * Las acciones se aplican de inmediato al almacén por el mismo camino que los cambios remotos; si la
+     * escritura falla se restaura el mensaje original.
+     */
+    private void react(ChatMessage chatMessage, String emoji) {
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        ChatMessage updated = copyOf(chatMessage);
+        updated.reactions = chatMessage.reactions != null ? new HashMap<>(chatMessage.reactions) : new HashMap<>();
+        boolean removing = emoji.equals(updated.reactions.get(userId));
+        if (removing) {
+            updated.reactions.remove(userId);
         } else {
-            showToast("No se pudo cargar la información del receptor.");
+            updated.reactions.put(userId, emoji);
         }
+        chatBackend.setReaction(chatMessage.id, userId, removing ? null : emoji, success -> {
+            if (!success) {
+                showToast("No se pudo guardar la reacción");
+                messageStore.applyMessageChanges(Collections.singletonList(chatMessage), Collections.emptyList());
+            }
+        });
+        messageStore.applyMessageChanges(Collections.singletonList(updated), Collections.emptyList());
     }
 
-    private void listenAvailabilityOfReceiver() {
-        if (receiverUser != null && receiverUser.id != null) {
-            database.collection(Constants.KEY_COLLECTION_USERS)
-                    .document(receiverUser.id)
-                    .addSnapshotListener(ChatActivity.this, (value, error) -> {
-                        if (error != null) {
-                            return;
-                        }
-                        if (value != null) {
-                            if (value.getLong(Constants.KEY_AVAILABILITY) != null) {
-                                int availability = value.getLong(Constants.KEY_AVAILABILITY).intValue();
-                                isReceiverAvailable = availability == 1;
-                            }
-                            receiverUser.token = value.getString(Constants.KEY_FCM_TOKEN);
-                            if (receiverUser.token == null) {
-                                receiverUser.image = value.getString(Constants.KEY_IMAGE);
-                                if (receiverUser.image != null) {
-                                    chatAdapter.setReceiverProfileImage(getBitmapFormEncodedString(receiverUser.image));
-                                    chatAdapter.notifyItemRangeChanged(0, chatMessages.size());
-                                }
-                            }
-                        }
-                        if (isReceiverAvailable) {
-                            binding.textAvailability.setVisibility(View.VISIBLE);
-                        } else {
-                            binding.textAvailability.setVisibility(View.GONE);
-                        }
-                    });
+    private void showEditDialog(ChatMessage chatMessage) {
+        EditText input = new EditText(this);
+        input.setText(chatMessage.message);
+        input.setSelection(input.getText().length());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.editar_mensaje)
+                .setView(input)
+                .setPositiveButton(R.string.guardar, (dialog, which) ->
+                        editMessage(chatMessage, input.getText().toString().trim()))
+                .setNegativeButton(R.string.cancelar, null)
+                .show();
+    }
+
+    private void editMessage(ChatMessage chatMessage, String text) {
+        if (text.isEmpty() || text.equals(chatMessage.message)) {
+            return;
+        }
+        ChatMessage updated = copyOf(chatMessage);
+        updated.message = text;
+        updated.edited = true;
+        if (chatMessage == messageBuffer.last()) {
+            updateLastMessage(text);
         }
+        chatBackend.editMessage(chatMessage.id, text, success -> {
+            if (!success) {
+                showToast("No se pudo editar el mensaje");
+                messageStore.applyMessageChanges(Collections.singletonList(chatMessage), Collections.emptyList());
+            }
+        });
+        messageStore.applyMessageChanges(Collections.singletonList(updated), Collections.emptyList());
+    }
+
+    private void confirmDelete(ChatMessage chatMessage) {
+        new AlertDialog.Builder(this)
+                .setMessage(R.string.eliminar_mensaje)
+                .setPositiveButton(R.string.eliminar, (dialog, which) -> deleteMessage(chatMessage))
+                .setNegativeButton(R.string.cancelar, null)
+                .show();
+    }
+
+    // Se marca como borrado en lugar de eliminar el documento, para que el cambio llegue a quien ya lo guardó
+    private void deleteMessage(ChatMessage chatMessage) {
+        if (chatMessage == messageBuffer.last()) {
+            int previous = messageBuffer.size() - 2;
+            updateLastMessage(previous >= 0 ? messageBuffer.get(previous).message : "");
+        }
+        chatBackend.deleteMessage(chatMessage.id, success -> {
+            if (!success) {
+                showToast("No se pudo eliminar el mensaje");
+                messageStore.upsertMessages(Collections.singletonList(chatMessage));
+            }
+        });
+        messageStore.applyMessageChanges(Collections.emptyList(), Collections.singletonList(chatMessage.id));
+    }
+
+    private void updateLastMessage(String text) {
+        chatSession.updateLastMessage(text);
+    }
+
+    private static ChatMessage copyOf(ChatMessage chatMessage) {
+        ChatMessage copy = new ChatMessage();
+        copy.id = chatMessage.id;
+        copy.senderId = chatMessage.senderId;
+        copy.receiverId = chatMessage.receiverId;
+        copy.message = chatMessage.message;
+        copy.dateTime = chatMessage.dateTime;
+        copy.dateObject = chatMessage.dateObject;
+        copy.pending = chatMessage.pending;
+        copy.edited = chatMessage.edited;
+        copy.reactions = chatMessage.reactions;
+        return copy;
     }
 
     private void showToast(String message) {
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
 
-    private void sendNotification(String messageBody) {
-        ApiClient.getClient().create(ApiService.class).sendMessage(
-                        Constants.getRemoteMsgHeaders(), messageBody)
-                .enqueue(new Callback<String>() {
-                    @Override
-                    public void onResponse(@NonNull Call<String> call, @NonNull Response<String> response) {
-                        if (response.isSuccessful()) {
-                            try {
-                                if (response.body() != null) {
-                                    JSONObject responseJson = new JSONObject(response.body());
-                                    JSONArray results = responseJson.getJSONArray("results");
-                                    if (responseJson.getInt("failure") == 1) {
-                                        JSONObject error = results.getJSONObject(0);
-                                        showToast(error.getString("error"));
-                                        return;
-                                    }
-                                }
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                            }
-                            showToast("Notificación enviada");
-                        } else {
-                            showToast("Error " + response.code());
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(@NonNull Call<String> call, @NonNull Throwable t) {
-                        showToast(t.getMessage());
-                    }
-                });
+    // La cola agrupa los mensajes seguidos al mismo contacto y reintenta si falla la red
+    private void sendNotification(ChatMessage chatMessage) {
+        long start = Tracing.begin("ChatActivity.sendNotification");
+        try {
+            NotificationQueue.getInstance(this).enqueue(chatMessage, receiverUser.token,
+                    preferenceManager.getString(Constants.KEY_NAME),
+                    preferenceManager.getString(Constants.KEY_FCM_TOKEN));
+        } finally {
+            Tracing.end(NOTIFY_TIME, start);
+        }
     }
 }
@@ -1,12 +1,7 @@
 package com.example.fbct2.activities;
 
-import static android.util.Base64.decode;
-
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.view.View;
 import android.widget.Toast;  // Import this for Toast
 
@@ -14,19 +9,29 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.fbct2.R;
 import com.example.fbct2.adapters.RecentConversationsAdapter;
+import com.example.fbct2.database.MessageStore;
 import com.example.fbct2.databinding.ActivityMainBinding;
+import com.example.fbct2.firebase.ChatMigration;
+import com.example.fbct2.firebase.NotificationAggregator;
+import com.example.fbct2.firebase.PresenceManager;
 import com.example.fbct2.listeners.ConversionListener;
 import com.example.fbct2.models.ChatMessage;
 import com.example.fbct2.models.User;
+import com.example.fbct2.network.NotificationQueue;
+import com.example.fbct2.utilities.AvatarLoader;
 import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.ConversationIndex;
+import com.example.fbct2.utilities.ConversationKeys;
+import com.example.fbct2.utilities.Metrics;
 import com.example.fbct2.utilities.PreferenceManager;
+import com.example.fbct2.utilities.Tracing;
 import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.android.material.snackbar.Snackbar;  // Import for Snackbar
 
@@ -36,11 +41,16 @@ import java.util.HashMap;
 import java.util.List;
 
 public class MainActivity extends BaseActivity implements ConversionListener {
+    private static final Metrics.Histogram SNAPSHOT_TIME = Metrics.getInstance().histogram("conversations.snapshot");
     private ActivityMainBinding binding;
     private PreferenceManager preferenceManager;
-    private List<ChatMessage> conversations;
+    private ConversationIndex conversations;
     private RecentConversationsAdapter conversationsAdapter;
     private FirebaseFirestore database;
+    private MessageStore messageStore;
+    // Firestore ya respondió: una lista vacía significa que no hay conversaciones, no que siguen cargando
+    private boolean conversationsLoaded = false;
+    private final MessageStore.ConversationObserver conversationObserver = this::showConversations;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,32 +62,103 @@ public class MainActivity extends BaseActivity implements ConversionListener {
         loadUserDetails();
         getToken();
         setListeners();
+        loadLocalConversations();
         listenerConversations();
+        if (getIntent().getBooleanExtra(Constants.KEY_FROM_NOTIFICATION_SUMMARY, false)) {
+            NotificationAggregator.getInstance(this).clearAll();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        messageStore.removeConversationObserver(conversationObserver);
     }
 
     private void init() {
-        conversations = new ArrayList<>();
-        conversationsAdapter = new RecentConversationsAdapter(conversations, this, getApplicationContext());
+        conversations = new ConversationIndex();
+        conversationsAdapter = new RecentConversationsAdapter(this, getApplicationContext());
         binding.conversationRecyclerView.setAdapter(conversationsAdapter);
         database = FirebaseFirestore.getInstance();
+        messageStore = MessageStore.getInstance(this);
+        messageStore.observeConversations(conversationObserver);
     }
 
     private void setListeners() {
         binding.imageSignOut.setOnClickListener(v -> signOut());
+        binding.imageSearch.setOnClickListener(v -> startActivity(new Intent(getApplicationContext(), SearchActivity.class)));
         binding.fabNewChat.setOnClickListener(v -> startActivity(new Intent(getApplicationContext(), UsersActivity.class)));
+        // Entrada escondida a la pantalla de métricas, disponible también en producción
+        binding.textName.setOnLongClickListener(v -> {
+            startActivity(new Intent(getApplicationContext(), MetricsActivity.class));
+            return true;
+        });
     }
 
     private void loadUserDetails() {
         binding.textName.setText(preferenceManager.getString(Constants.KEY_NAME));
-        byte[] bytes = Base64.decode(preferenceManager.getString(Constants.KEY_IMAGE), Base64.DEFAULT);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        binding.imageProfile.setImageBitmap(bitmap);
+        migrateOwnAvatar();
+        AvatarLoader.getInstance(this).load(preferenceManager.getString(Constants.KEY_IMAGE_ID),
+                preferenceManager.getString(Constants.KEY_IMAGE), binding.imageProfile);
+    }
+
+    // Cuentas creadas antes de `avatars`: se sube la imagen y el documento pasa a guardar solo el id.
+    // El id se guarda en cuanto se conoce; Firestore conserva la escritura del perfil hasta que llegue
+    private void migrateOwnAvatar() {
+        String encodedImage = preferenceManager.getString(Constants.KEY_IMAGE);
+        if (preferenceManager.getString(Constants.KEY_IMAGE_ID) != null || encodedImage == null) {
+            return;
+        }
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        AvatarLoader.getInstance(this).upload(encodedImage, imageId -> {
+            if (!userId.equals(preferenceManager.getString(Constants.KEY_USER_ID))) {
+                return;
+            }
+            preferenceManager.putString(Constants.KEY_IMAGE_ID, imageId);
+            HashMap<String, Object> updates = new HashMap<>();
+            updates.put(Constants.KEY_IMAGE_ID, imageId);
+            updates.put(Constants.KEY_IMAGE, FieldValue.delete());
+            updates.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
+            database.collection(Constants.KEY_COLLECTION_USERS).document(userId).update(updates);
+        });
     }
 
     private void getToken() {
         FirebaseMessaging.getInstance().getToken().addOnSuccessListener(this::updateToken);
     }
 
+    // La lista se pinta desde el almacén local sin esperar el primer snapshot de Firestore
+    private void loadLocalConversations() {
+        messageStore.loadConversations(preferenceManager.getString(Constants.KEY_USER_ID),
+                conversations -> showConversations(conversations, Collections.emptyList()));
+    }
+
+    private void showConversations(List<ChatMessage> upserted, List<String> removedIds) {
+        for (String conversionId : removedIds) {
+            conversations.remove(conversionId);
+        }
+        for (ChatMessage conversation : upserted) {
+            // Reemplaza la conversación con el mismo id y la reubica según su nueva fecha
+            conversations.upsert(conversation);
+        }
+        // También cuando queda vacía: si se borró la última conversación, la lista no debe seguir mostrándola
+        conversationsAdapter.submitList(conversations.snapshot(), () -> {
+            if (conversations.size() > 0) {
+                binding.conversationRecyclerView.smoothScrollToPosition(0);
+            }
+        });
+        updateEmptyState();
+    }
+
+    private void updateEmptyState() {
+        boolean empty = conversations.size() == 0;
+        binding.conversationRecyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
+        binding.textNoConversations.setVisibility(empty && conversationsLoaded ? View.VISIBLE : View.GONE);
+        if (!empty || conversationsLoaded) {
+            binding.progressBar.setVisibility(View.GONE);
+        }
+    }
+
     private void listenerConversations() {
         database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
                 .whereEqualTo(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
@@ -87,14 +168,22 @@ public class MainActivity extends BaseActivity implements ConversionListener {
                 .whereEqualTo(Constants.KEY_RECEIVER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
                 .addSnapshotListener(eventListener);
     }
-//funciona
 private final EventListener<QuerySnapshot> eventListener = (value, error) -> {
     if (error != null) {
         return;
     }
     if (value != null) {
-        for (DocumentChange documentChange : value.getDocumentChanges()) {
-            if (documentChange.getType() == DocumentChange.Type.ADDED || documentChange.getType() == DocumentChange.Type.MODIFIED) {
+        long start = Tracing.begin("MainActivity.eventListener");
+        try {
+            List<ChatMessage> upserted = new ArrayList<>();
+            List<String> removedIds = new ArrayList<>();
+            for (DocumentChange documentChange : value.getDocumentChanges()) {
+                if (documentChange.getType() == DocumentChange.Type.REMOVED) {
+                    removedIds.add(documentChange.getDocument().getId());
+                    forgetConversationId(documentChange.getDocument());
+                    continue;
+                }
+                rememberConversationId(documentChange.getDocument());
                 ChatMessage chatMessage = new ChatMessage();
                 String senderId = documentChange.getDocument().getString(Constants.KEY_SENDER_ID);
                 String receiverId = documentChange.getDocument().getString(Constants.KEY_RECEIVER_ID);
@@ -108,60 +197,76 @@ private final EventListener<QuerySnapshot> eventListener = (value, error) -> {
                 if (senderId.equals(preferenceManager.getString(Constants.KEY_USER_ID))) {
                     chatMessage.conversionName = documentChange.getDocument().getString(Constants.KEY_RECEIVER_NAME);
                     chatMessage.conversionImage = documentChange.getDocument().getString(Constants.KEY_RECEIVER_IMAGE);
+                    chatMessage.conversionImageId = documentChange.getDocument().getString(Constants.KEY_RECEIVER_IMAGE_ID);
                 } else {
                     chatMessage.conversionName = documentChange.getDocument().getString(Constants.KEY_SENDER_NAME);
                     chatMessage.conversionImage = documentChange.getDocument().getString(Constants.KEY_SENDER_IMAGE);
+                    chatMessage.conversionImageId = documentChange.getDocument().getString(Constants.KEY_SENDER_IMAGE_ID);
                 }
-
-                // Verifica si ya existe una conversación con el mismo usuario
-                boolean isConversationExist = false;
-                for (ChatMessage conversation : conversations) {
-                    if (conversation.senderId.equals(chatMessage.senderId) && conversation.receiverId.equals(chatMessage.receiverId)) {
-                        // Actualiza la conversación existente
-                        conversation.message = chatMessage.message;
-                        conversation.dateObject = chatMessage.dateObject;
-                        isConversationExist = true;
-                        break;
-                    }
-                }
-
-                // Solo agrega la conversación si no existe
-                if (!isConversationExist) {
-                    conversations.add(chatMessage);
-                }
+                upserted.add(chatMessage);
             }
+            // El almacén avisa a conversationObserver, que es quien actualiza la lista
+            messageStore.upsertConversations(preferenceManager.getString(Constants.KEY_USER_ID), upserted, removedIds);
+            conversationsLoaded = true;
+            if (value.isEmpty()) {
+                updateEmptyState();
+            }
+        } finally {
+            Tracing.end(SNAPSHOT_TIME, start);
         }
-        Collections.sort(conversations, (obj1, obj2) -> obj2.dateObject.compareTo(obj1.dateObject));
-        conversationsAdapter.notifyDataSetChanged();
-        binding.conversationRecyclerView.smoothScrollToPosition(0);
-        binding.conversationRecyclerView.setVisibility(View.VISIBLE);
-        binding.progressBar.setVisibility(View.GONE);
     }
 };
 
 
 
+    // ChatActivity usa este mapa para escribir en la conversación sin tener que buscarla
+    private void rememberConversationId(DocumentSnapshot document) {
+        String senderId = document.getString(Constants.KEY_SENDER_ID);
+        String receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+        if (senderId == null || receiverId == null) {
+            return;
+        }
+        String peerId = senderId.equals(preferenceManager.getString(Constants.KEY_USER_ID)) ? receiverId : senderId;
+        preferenceManager.putString(Constants.KEY_CONVERSATION_ID_PREFIX + peerId, document.getId());
+        if (!document.getId().equals(ConversationKeys.of(senderId, receiverId))) {
+            ChatMigration.migrateConversationDocument(database, document);
+        }
+    }
+
+    private void forgetConversationId(DocumentSnapshot document) {
+        String senderId = document.getString(Constants.KEY_SENDER_ID);
+        String receiverId = document.getString(Constants.KEY_RECEIVER_ID);
+        if (senderId == null || receiverId == null) {
+            return;
+        }
+        String peerId = senderId.equals(preferenceManager.getString(Constants.KEY_USER_ID)) ? receiverId : senderId;
+        String key = Constants.KEY_CONVERSATION_ID_PREFIX + peerId;
+        if (document.getId().equals(preferenceManager.getString(key))) {
+            preferenceManager.putString(key, null);
+        }
+    }
+
     private void updateToken(String token) {
         preferenceManager.putString(Constants.KEY_FCM_TOKEN, token);
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference =
-                database.collection(Constants.KEY_COLLECTION_USERS)
-                        .document(preferenceManager.getString(Constants.KEY_USER_ID));
-        documentReference.update(Constants.KEY_FCM_TOKEN, token)
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_FCM_TOKEN, token);
+        PresenceManager.presenceOf(preferenceManager.getString(Constants.KEY_USER_ID))
+                .set(updates, SetOptions.merge())
                 .addOnFailureListener(e -> showToast("Unable to send token"));
     }
 
     private void signOut() {
         showToast("Signing out...");
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
-        DocumentReference documentReference =
-                database.collection(Constants.KEY_COLLECTION_USERS)
-                        .document(preferenceManager.getString(Constants.KEY_USER_ID));
         HashMap<String, Object> updates = new HashMap<>();
         updates.put(Constants.KEY_FCM_TOKEN, FieldValue.delete());
-        documentReference.update(updates)
+        updates.put(Constants.KEY_AVAILABILITY, 0);
+        PresenceManager.presenceOf(preferenceManager.getString(Constants.KEY_USER_ID))
+                .set(updates, SetOptions.merge())
                 .addOnSuccessListener(unused -> {
+                    PresenceManager.getInstance(this).onSignedOut();
                     preferenceManager.clear();
+                    NotificationQueue.getInstance(this).clear();
+                    messageStore.clear();
                     startActivity(new Intent(getApplicationContext(), SingInActivity.class));
                     finish();
                 })
@@ -178,34 +283,5 @@ private final EventListener<QuerySnapshot> eventListener = (value, error) -> {
         intent.putExtra(Constants.KEY_USER, user);
         startActivity(intent);
     }
-    private void getRecentConversations() {
-        database.collection(Constants.KEY_COLLECTION_CONVERSATIONS)
-                .whereEqualTo(Constants.KEY_SENDER_ID, preferenceManager.getString(Constants.KEY_USER_ID))
-                .addSnapshotListener((value, error) -> {
-                    if (error != null) {
-                        return;
-                    }
-                    if (value != null) {
-                        List<ChatMessage> recentMessages = new ArrayList<>();
-                        for (DocumentSnapshot document : value.getDocuments()) {
-                            ChatMessage chatMessage = new ChatMessage();
-                            chatMessage.conversionId = document.getString(Constants.KEY_RECEIVER_ID);
-                            chatMessage.conversionName = document.getString(Constants.KEY_RECEIVER_NAME);
-                            chatMessage.conversionImage = document.getString(Constants.KEY_RECEIVER_IMAGE);
-                            chatMessage.message = document.getString(Constants.KEY_LAST_MESSAGE);
-                            recentMessages.add(chatMessage);
-                        }
-
-                        if (recentMessages.size() > 0) {
-                            conversations.clear();  // Limpiar lista de conversaciones previas
-                            conversations.addAll(recentMessages);  // Añadir conversaciones recientes
-                            conversationsAdapter.notifyDataSetChanged();  // Actualizar el adaptador
-                            binding.conversationRecyclerView.setVisibility(View.VISIBLE);
-                        } else {
-                            binding.textNoConversations.setVisibility(View.VISIBLE);
-                        }
-                    }
-                });
-    }
 
 }
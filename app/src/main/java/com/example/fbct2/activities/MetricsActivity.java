@@ -0,0 +1,81 @@
+package com.example.fbct2.activities;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import com.example.fbct2.databinding.ActivityMetricsBinding;
+import com.example.fbct2.utilities.Metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Pantalla de diagnóstico con los contadores e histogramas de Metrics, también en builds de producción.
+ * El volcado queda en la carpeta de la app en almacenamiento externo, así se baja con
+ * adb pull /sdcard/Android/data/com.example.fbct2/files/ sin permisos extra.
+ */
+public class MetricsActivity extends BaseActivity {
+
+    private static final long REFRESH_INTERVAL_MS = 1_000;
+
+    private ActivityMetricsBinding binding;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            binding.textMetrics.setText(Metrics.getInstance().dump());
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivityMetricsBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+        setListeners();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refreshRunnable);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refreshRunnable);
+    }
+
+    private void setListeners() {
+        binding.imageBack.setOnClickListener(v -> onBackPressed());
+        binding.buttonReset.setOnClickListener(v -> {
+            Metrics.getInstance().reset();
+            binding.textMetrics.setText(Metrics.getInstance().dump());
+        });
+        binding.buttonDump.setOnClickListener(v -> dumpToFile());
+    }
+
+    private void dumpToFile() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        File file = new File(directory, "metrics-" + System.currentTimeMillis() + ".txt");
+        try (Writer writer = new FileWriter(file)) {
+            Metrics.getInstance().dump(writer);
+            showToast(file.getAbsolutePath());
+        } catch (IOException e) {
+            showToast("No se pudo guardar el archivo");
+        }
+    }
+
+    private void showToast(String message) {
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+    }
+}
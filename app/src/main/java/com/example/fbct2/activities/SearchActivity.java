@@ -0,0 +1,155 @@
+package com.example.fbct2.activities;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+
+import com.example.fbct2.adapters.SearchResultsAdapter;
+import com.example.fbct2.database.MessageStore;
+import com.example.fbct2.databinding.ActivitySearchBinding;
+import com.example.fbct2.listeners.SearchResultListener;
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.models.User;
+import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.PreferenceManager;
+import com.example.fbct2.utilities.TimestampFormatter;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class SearchActivity extends BaseActivity implements SearchResultListener {
+
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+    private static final int SEARCH_LIMIT = 50;
+
+    private ActivitySearchBinding binding;
+    private PreferenceManager preferenceManager;
+    private MessageStore messageStore;
+    private SearchResultsAdapter searchResultsAdapter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::search;
+    // Contacto de cada conversación local, para mostrar nombres y abrir el chat
+    private final Map<String, User> peers = new HashMap<>();
+    // Cada búsqueda incrementa el contador; una respuesta de una búsqueda anterior se descarta
+    private int searchGeneration = 0;
+    private final TimestampFormatter timestampFormatter = new TimestampFormatter(Locale.getDefault(), ZoneId.systemDefault());
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivitySearchBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+        init();
+        setListeners();
+        loadPeers();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(searchRunnable);
+    }
+
+    private void init() {
+        preferenceManager = new PreferenceManager(getApplicationContext());
+        messageStore = MessageStore.getInstance(this);
+        searchResultsAdapter = new SearchResultsAdapter(this);
+        binding.searchRecyclerView.setAdapter(searchResultsAdapter);
+    }
+
+    private void setListeners() {
+        binding.imageBack.setOnClickListener(v -> onBackPressed());
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(searchRunnable);
+                handler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
+    }
+
+    private void loadPeers() {
+        String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        messageStore.loadConversations(currentUserId, conversations -> {
+            for (ChatMessage conversation : conversations) {
+                User user = new User();
+                user.id = conversation.senderId.equals(currentUserId) ? conversation.receiverId : conversation.senderId;
+                user.name = conversation.conversionName;
+                user.image = conversation.conversionImage;
+                user.imageId = conversation.conversionImageId;
+                peers.put(user.id, user);
+            }
+        });
+    }
+
+    private void search() {
+        int generation = ++searchGeneration;
+        String input = binding.inputSearch.getText().toString().trim();
+        if (input.isEmpty()) {
+            showResults(new ArrayList<>());
+            binding.textErrorMessage.setVisibility(View.GONE);
+            return;
+        }
+        messageStore.searchMessages(input, SEARCH_LIMIT, messages -> {
+            if (generation != searchGeneration) {
+                return;
+            }
+            String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+            List<ChatMessage> results = new ArrayList<>();
+            for (ChatMessage chatMessage : messages) {
+                User peer = peers.get(chatMessage.senderId.equals(currentUserId) ? chatMessage.receiverId : chatMessage.senderId);
+                if (peer == null) {
+                    continue;
+                }
+                chatMessage.conversionName = peer.name;
+                chatMessage.dateTime = getReadableDateTime(chatMessage.dateObject);
+                results.add(chatMessage);
+            }
+            showResults(results);
+        });
+    }
+
+    private void showResults(List<ChatMessage> results) {
+        searchResultsAdapter.setResults(results);
+        if (results.isEmpty()) {
+            binding.searchRecyclerView.setVisibility(View.GONE);
+            binding.textErrorMessage.setVisibility(View.VISIBLE);
+        } else {
+            binding.searchRecyclerView.scrollToPosition(0);
+            binding.searchRecyclerView.setVisibility(View.VISIBLE);
+            binding.textErrorMessage.setVisibility(View.GONE);
+        }
+    }
+
+    private String getReadableDateTime(Date date) {
+        return timestampFormatter.format(date);
+    }
+
+    @Override
+    public void onSearchResultClicked(ChatMessage chatMessage) {
+        String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        User peer = peers.get(chatMessage.senderId.equals(currentUserId) ? chatMessage.receiverId : chatMessage.senderId);
+        Intent intent = new Intent(getApplicationContext(), ChatActivity.class);
+        intent.putExtra(Constants.KEY_USER, peer);
+        intent.putExtra(Constants.KEY_MESSAGE_ID, chatMessage.id);
+        intent.putExtra(Constants.KEY_TIMESTAMP, chatMessage.dateObject.getTime());
+        startActivity(intent);
+    }
+}
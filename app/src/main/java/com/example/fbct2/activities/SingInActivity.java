@@ -9,6 +9,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.fbct2.databinding.ActivitySingInBinding;
+import com.example.fbct2.firebase.PresenceManager;
 import com.example.fbct2.utilities.Constants;
 import com.example.fbct2.utilities.PreferenceManager;
 import com.google.firebase.firestore.DocumentSnapshot;
@@ -59,6 +60,8 @@ public class SingInActivity extends AppCompatActivity {
                         preferenceManager.putString(Constants.KEY_USER_ID, documentSnapshot.getId());
                         preferenceManager.putString(Constants.KEY_NAME, documentSnapshot.getString(Constants.KEY_NAME));
                         preferenceManager.putString(Constants.KEY_IMAGE, documentSnapshot.getString(Constants.KEY_IMAGE));
+                        preferenceManager.putString(Constants.KEY_IMAGE_ID, documentSnapshot.getString(Constants.KEY_IMAGE_ID));
+                        PresenceManager.getInstance(getApplicationContext()).onSignedIn();
                         Intent intent = new Intent(getApplicationContext(), MainActivity.class);
                         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK|Intent.FLAG_ACTIVITY_CLEAR_TASK);
                         startActivity(intent);
@@ -20,8 +20,11 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.fbct2.R;
 import com.example.fbct2.databinding.ActivitySingUpBinding;
+import com.example.fbct2.firebase.FirestoreAvatarStore;
+import com.example.fbct2.firebase.PresenceManager;
 import com.example.fbct2.utilities.Constants;
 import com.example.fbct2.utilities.PreferenceManager;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.auth.User;
 
@@ -69,7 +72,10 @@ public class SingUpActivity extends AppCompatActivity {
         user.put(Constants.KEY_NAME, binding.inputName.getText().toString());
         user.put(Constants.KEY_EMAIL, binding.inputEmail.getText().toString());
         user.put(Constants.KEY_PASSWORD, binding.inputPassword.getText().toString());
-        user.put(Constants.KEY_IMAGE, encodedImage);
+        // El documento solo guarda el id; la imagen vive una sola vez en `avatars`
+        String imageId = new FirestoreAvatarStore(database).put(encodedImage);
+        user.put(Constants.KEY_IMAGE_ID, imageId);
+        user.put(Constants.KEY_UPDATED_AT, FieldValue.serverTimestamp());
         database.collection(Constants.KEY_COLLECTION_USERS)
                 .add(user)
                 .addOnSuccessListener(documentReference -> {
@@ -78,6 +84,8 @@ public class SingUpActivity extends AppCompatActivity {
                     preferenceManager.putString(Constants.KEY_USER_ID, documentReference.getId());
                     preferenceManager.putString(Constants.KEY_NAME, binding.inputName.getText().toString());
                     preferenceManager.putString(Constants.KEY_IMAGE, encodedImage);
+                    preferenceManager.putString(Constants.KEY_IMAGE_ID, imageId);
+                    PresenceManager.getInstance(getApplicationContext()).onSignedIn();
                     Intent intent = new Intent(getApplicationContext(), MainActivity.class);
                     intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
                     startActivity(intent);
@@ -5,74 +5,223 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.Toast;
 
-import androidx.appcompat.app.AppCompatActivity;
+import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.fbct2.adapters.UsersAdapter;
+import com.example.fbct2.database.MessageStore;
 import com.example.fbct2.databinding.ActivityUsersBinding;
 import com.example.fbct2.listeners.UserListener;
 import com.example.fbct2.models.User;
 import com.example.fbct2.utilities.Constants;
 import com.example.fbct2.utilities.PreferenceManager;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.Source;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+/**
+ * Directorio de usuarios paginado por nombre. Mientras el cache local no tenga el directorio completo
+ * las páginas vienen de Firestore y se guardan; después se leen del cache y solo se piden a Firestore
+ * los usuarios con {@code updatedAt} posterior a la última sincronización.
+ */
 public class UsersActivity extends BaseActivity implements UserListener {
 
+    private static final int SYNC_BATCH_SIZE = 100;
+    // Margen para el reloj del dispositivo al fijar el primer cursor; releer unos pocos usuarios no hace daño
+    private static final long SYNC_CLOCK_SKEW_MS = 5 * 60 * 1000;
+
     private ActivityUsersBinding binding;
     private PreferenceManager preferenceManager;
+    private FirebaseFirestore database;
+    private MessageStore messageStore;
+    private UsersAdapter usersAdapter;
+    private String currentUserId;
+    private boolean isLoadingPage = false;
+    private boolean hasMorePages = true;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         binding = ActivityUsersBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
-        preferenceManager = new PreferenceManager(getApplicationContext());
+        init();
         setListeners();
-        getUsers();
+        loadNextPage();
+        syncUsers();
+    }
+
+    private void init() {
+        preferenceManager = new PreferenceManager(getApplicationContext());
+        database = FirebaseFirestore.getInstance();
+        messageStore = MessageStore.getInstance(this);
+        currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
+        usersAdapter = new UsersAdapter(this);
+        binding.usersRecyclerView.setAdapter(usersAdapter);
     }
 
     private void setListeners() {
         binding.imageBack.setOnClickListener(v -> onBackPressed());
+        binding.usersRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (dy > 0 && layoutManager != null && layoutManager.findLastVisibleItemPosition()
+                        >= usersAdapter.getItemCount() - 1 - Constants.USERS_PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+    }
+
+    private void loadNextPage() {
+        if (isLoadingPage || !hasMorePages) {
+            return;
+        }
+        isLoadingPage = true;
+        if (usersAdapter.getItemCount() == 0) {
+            loading(true);
+        }
+        if (preferenceManager.getBoolean(Constants.KEY_USERS_DIRECTORY_COMPLETE)) {
+            loadLocalPage(true);
+        } else {
+            loadRemotePage();
+        }
+    }
+
+    // Con el directorio completo, una página local corta es el final; si solo reemplaza a una página
+    // remota que falló, no dice nada del servidor y el próximo scroll vuelve a intentarlo
+    private void loadLocalPage(boolean directoryComplete) {
+        messageStore.loadUsers(currentUserId, usersAdapter.last(), Constants.USERS_PAGE_SIZE, users -> {
+            isLoadingPage = false;
+            if (directoryComplete) {
+                hasMorePages = users.size() == Constants.USERS_PAGE_SIZE;
+            }
+            showPage(users);
+        });
+    }
+
+    private void loadRemotePage() {
+        if (preferenceManager.getLong(Constants.KEY_USERS_SYNCED_AT) == 0L) {
+            // Lo que cambie mientras se recorre el directorio lo traerá la sincronización incremental
+            preferenceManager.putLong(Constants.KEY_USERS_SYNCED_AT, System.currentTimeMillis() - SYNC_CLOCK_SKEW_MS);
+        }
+        Query query = database.collection(Constants.KEY_COLLECTION_USERS)
+                .orderBy(Constants.KEY_NAME)
+                .orderBy(FieldPath.documentId())
+                .limit(Constants.USERS_PAGE_SIZE);
+        User last = usersAdapter.last();
+        if (last != null) {
+            query = query.startAfter(last.name, last.id);
+        }
+        // Sin conexión, el origen por defecto responde con el cache como si fuera un éxito, y una página
+        // corta del cache marcaría el directorio como completo para siempre
+        query.get(Source.SERVER).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                // Sin conexión se muestra lo que haya en el cache
+                loadLocalPage(false);
+                return;
+            }
+            List<User> users = new ArrayList<>();
+            for (QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
+                if (currentUserId.equals(queryDocumentSnapshot.getId())) {
+                    continue;
+                }
+                users.add(toUser(queryDocumentSnapshot));
+            }
+            if (task.getResult().size() < Constants.USERS_PAGE_SIZE) {
+                hasMorePages = false;
+                preferenceManager.putBoolean(Constants.KEY_USERS_DIRECTORY_COMPLETE, true);
+            }
+            messageStore.upsertUsers(users, () -> { });
+            isLoadingPage = false;
+            showPage(users);
+            if (users.isEmpty() && hasMorePages) {
+                // La página solo traía al usuario actual
+                loadNextPage();
+            }
+        });
     }
 
-    private void getUsers() {
-        loading(true);
-        FirebaseFirestore database = FirebaseFirestore.getInstance();
+    // Solo trae los usuarios que cambiaron desde el último cursor, en lotes ordenados por updatedAt
+    private void syncUsers() {
+        long syncedAt = preferenceManager.getLong(Constants.KEY_USERS_SYNCED_AT);
+        if (syncedAt == 0L) {
+            return;
+        }
         database.collection(Constants.KEY_COLLECTION_USERS)
-                .get().addOnCompleteListener(task -> {
-                    loading(false);
-                    String currentUserId = preferenceManager.getString(Constants.KEY_USER_ID);
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        List<User> users = new ArrayList<>();
-                        for (QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
-                            if (currentUserId.equals(queryDocumentSnapshot.getId())) {
-                                continue;
-                            }
-                            User user = new User();
-                            user.name = queryDocumentSnapshot.getString(Constants.KEY_NAME);
-                            user.email = queryDocumentSnapshot.getString(Constants.KEY_EMAIL);
-                            user.image = queryDocumentSnapshot.getString(Constants.KEY_IMAGE);
-                            user.token = queryDocumentSnapshot.getString(Constants.KEY_FCM_TOKEN);
-                            user.id = queryDocumentSnapshot.getId();
-                            users.add(user);
-                        }
-                        if (users.size() > 0) {
-                            UsersAdapter usersAdapter = new UsersAdapter(users,this);
-                            binding.usersRecyclerView.setAdapter(usersAdapter);
-                            binding.usersRecyclerView.setVisibility(View.VISIBLE);
-                        } else {
-                            showErrorMessage();
+                .whereGreaterThan(Constants.KEY_UPDATED_AT, new Date(syncedAt))
+                .orderBy(Constants.KEY_UPDATED_AT)
+                .limit(SYNC_BATCH_SIZE)
+                // Del cache el cursor saltaría a usuarios que el servidor tiene y el cache no
+                .get(Source.SERVER)
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    if (queryDocumentSnapshots.isEmpty()) {
+                        return;
+                    }
+                    List<User> users = new ArrayList<>();
+                    long newestUpdate = syncedAt;
+                    for (DocumentSnapshot documentSnapshot : queryDocumentSnapshots.getDocuments()) {
+                        Date updatedAt = documentSnapshot.getDate(Constants.KEY_UPDATED_AT);
+                        if (updatedAt != null) {
+                            newestUpdate = Math.max(newestUpdate, updatedAt.getTime());
                         }
-                    } else {
-                        showErrorMessage();
+                        users.add(toUser(documentSnapshot));
                     }
+                    long cursor = newestUpdate;
+                    preferenceManager.putLong(Constants.KEY_USERS_SYNCED_AT, cursor);
+                    messageStore.upsertUsers(users, () -> {
+                        if (preferenceManager.getBoolean(Constants.KEY_USERS_DIRECTORY_COMPLETE)) {
+                            reloadLoadedUsers();
+                        }
+                        if (queryDocumentSnapshots.size() == SYNC_BATCH_SIZE && cursor > syncedAt) {
+                            syncUsers();
+                        }
+                    });
                 });
     }
 
+    // Vuelve a leer del cache el rango ya mostrado para reflejar nombres o avatares actualizados
+    private void reloadLoadedUsers() {
+        if (isLoadingPage) {
+            return;
+        }
+        int loaded = Math.max(usersAdapter.getItemCount(), Constants.USERS_PAGE_SIZE);
+        messageStore.loadUsers(currentUserId, null, loaded, users -> {
+            usersAdapter.setUsers(users);
+            showPage(new ArrayList<>());
+        });
+    }
+
+    private User toUser(DocumentSnapshot documentSnapshot) {
+        User user = new User();
+        user.name = documentSnapshot.getString(Constants.KEY_NAME);
+        user.email = documentSnapshot.getString(Constants.KEY_EMAIL);
+        user.imageId = documentSnapshot.getString(Constants.KEY_IMAGE_ID);
+        // La imagen en línea solo se conserva para cuentas que todavía no tienen avatar en `avatars`
+        user.image = user.imageId == null ? documentSnapshot.getString(Constants.KEY_IMAGE) : null;
+        user.id = documentSnapshot.getId();
+        return user;
+    }
+
+    private void showPage(List<User> users) {
+        loading(false);
+        usersAdapter.addUsers(users);
+        if (usersAdapter.getItemCount() > 0) {
+            binding.textErrorMessage.setVisibility(View.GONE);
+            binding.usersRecyclerView.setVisibility(View.VISIBLE);
+        } else if (!hasMorePages) {
+            showErrorMessage();
+        }
+    }
+
     private void showErrorMessage() {
         binding.textErrorMessage.setText(String.format("%s", "Usuario no disponible"));
         binding.textErrorMessage.setVisibility(View.VISIBLE);
@@ -2,32 +2,53 @@ package com.example.fbct2.adapters;
 
 import android.graphics.Bitmap;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.fbct2.R;
 import com.example.fbct2.databinding.ItemContainerReceivedMessageBinding;
 import com.example.fbct2.databinding.ItemContainerSentMessageBinding;
+import com.example.fbct2.listeners.MessageListener;
 import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.Metrics;
+import com.example.fbct2.utilities.Tracing;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     private final List<ChatMessage> chatMessages;
     private  Bitmap receiverProfileImage;
     private final String senderId;
+    private final MessageListener messageListener;
 
     public static final int VIEW_TYPE_SENT = 1;
     public static final int VIEW_TYPE_RECEIVED = 2;
+    private static final float PENDING_ALPHA = 0.6f;
+    // Cambio parcial: solo se vuelve a pintar el avatar, sin tocar el texto del mensaje
+    public static final Object PAYLOAD_PROFILE_IMAGE = new Object();
+    private static final Metrics.Histogram BIND_TIME = Metrics.getInstance().histogram("chat.adapter.bind");
+
+    // Los ids de Firestore son cadenas; a cada uno se le asigna un número fijo mientras viva el adaptador
+    private final Map<String, Long> itemIds = new HashMap<>();
+
     public void setReceiverProfileImage(Bitmap bitmap){
         receiverProfileImage = bitmap;
     }
-    public ChatAdapter(List<ChatMessage> chatMessages, Bitmap receiverProfileImage, String senderId) {
+    public ChatAdapter(List<ChatMessage> chatMessages, Bitmap receiverProfileImage, String senderId,
+                       MessageListener messageListener) {
         this.chatMessages = chatMessages;
         this.receiverProfileImage = receiverProfileImage;
         this.senderId = senderId;
+        this.messageListener = messageListener;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -38,26 +59,67 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                     (ItemContainerSentMessageBinding
                             .inflate(LayoutInflater.
                                             from(parent.getContext())
-                                    , parent, false));
+                                    , parent, false), messageListener);
 
         }else {
             return new ReceivedMessageViewHolder
                     (ItemContainerReceivedMessageBinding
                             .inflate(LayoutInflater.
                                             from(parent.getContext())
-                                    , parent, false));
+                                    , parent, false), messageListener);
         }
 
     }
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        if(getItemViewType(position) == VIEW_TYPE_SENT){
-            ((SentMessageViewHolder)holder).setData(chatMessages.get(position));
-        }else{
-            ((ReceivedMessageViewHolder)holder).setData(chatMessages.get(position), receiverProfileImage);
+        long start = Tracing.begin("ChatAdapter.bind");
+        try {
+            if(getItemViewType(position) == VIEW_TYPE_SENT){
+                ((SentMessageViewHolder)holder).setData(chatMessages.get(position));
+            }else{
+                ((ReceivedMessageViewHolder)holder).setData(chatMessages.get(position), receiverProfileImage);
+            }
+        } finally {
+            Tracing.end(BIND_TIME, start);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || payloads.contains(null)) {
+            onBindViewHolder(holder, position);
+            return;
         }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_PROFILE_IMAGE) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+        if (holder instanceof ReceivedMessageViewHolder) {
+            ((ReceivedMessageViewHolder) holder).setProfileImage(receiverProfileImage);
+        }
+    }
+
+    // Las vistas guardadas en la caché del RecyclerView vuelven sin pasar por onBind; si el avatar cambió
+    // mientras estaban fuera de pantalla se actualiza aquí
+    @Override
+    public void onViewAttachedToWindow(@NonNull RecyclerView.ViewHolder holder) {
+        if (holder instanceof ReceivedMessageViewHolder) {
+            ((ReceivedMessageViewHolder) holder).setProfileImage(receiverProfileImage);
+        }
+    }
 
+    @Override
+    public long getItemId(int position) {
+        String id = chatMessages.get(position).id;
+        Long itemId = itemIds.get(id);
+        if (itemId == null) {
+            itemId = (long) itemIds.size();
+            itemIds.put(id, itemId);
+        }
+        return itemId;
     }
 
     @Override
@@ -67,7 +129,11 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     @Override
     public int getItemViewType(int position) {
-        if(chatMessages.get(position).senderId.equals(senderId)){
+        ChatMessage chatMessage = chatMessages.get(position);
+        if (chatMessage.sentByMe == null) {
+            chatMessage.sentByMe = chatMessage.senderId.equals(senderId);
+        }
+        if(chatMessage.sentByMe){
             return VIEW_TYPE_SENT;
 
         }else{
@@ -75,32 +141,89 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
+    private static String dateTimeOf(ChatMessage chatMessage, TextView textView) {
+        return chatMessage.edited
+                ? textView.getContext().getString(R.string.fecha_editado, chatMessage.dateTime)
+                : chatMessage.dateTime;
+    }
+
+    // Cada emoji una vez, con la cantidad si más de una persona lo eligió
+    private static void setReactions(TextView textReactions, Map<String, String> reactions) {
+        if (reactions == null || reactions.isEmpty()) {
+            textReactions.setVisibility(View.GONE);
+            return;
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String emoji : reactions.values()) {
+            Integer count = counts.get(emoji);
+            counts.put(emoji, count == null ? 1 : count + 1);
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (text.length() > 0) {
+                text.append("  ");
+            }
+            text.append(entry.getKey());
+            if (entry.getValue() > 1) {
+                text.append(' ').append(entry.getValue());
+            }
+        }
+        textReactions.setText(text);
+        textReactions.setVisibility(View.VISIBLE);
+    }
+
     static class SentMessageViewHolder extends RecyclerView.ViewHolder {
         private final ItemContainerSentMessageBinding binding;
+        private ChatMessage chatMessage;
 
-        SentMessageViewHolder(ItemContainerSentMessageBinding itemContainerSentMessageBinding){
+        SentMessageViewHolder(ItemContainerSentMessageBinding itemContainerSentMessageBinding, MessageListener messageListener){
             super(itemContainerSentMessageBinding.getRoot());
             binding = itemContainerSentMessageBinding;
+            binding.textMessage.setOnLongClickListener(v -> {
+                messageListener.onMessageLongClicked(chatMessage);
+                return true;
+            });
         }
         void setData(ChatMessage chatMessage){
+            this.chatMessage = chatMessage;
             binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
+            // Mientras el servidor no confirma, el mensaje se muestra atenuado y sin hora definitiva
+            if (chatMessage.pending) {
+                binding.textDateTime.setText(R.string.enviando);
+                binding.getRoot().setAlpha(PENDING_ALPHA);
+            } else {
+                binding.textDateTime.setText(dateTimeOf(chatMessage, binding.textDateTime));
+                binding.getRoot().setAlpha(1f);
+            }
+            setReactions(binding.textReactions, chatMessage.reactions);
         }
     }
 
     static class ReceivedMessageViewHolder extends RecyclerView.ViewHolder {
         private final ItemContainerReceivedMessageBinding binding;
+        private Bitmap shownProfileImage;
+        private ChatMessage chatMessage;
 
-        ReceivedMessageViewHolder(ItemContainerReceivedMessageBinding itemContainerReceivedMessageBinding){
+        ReceivedMessageViewHolder(ItemContainerReceivedMessageBinding itemContainerReceivedMessageBinding, MessageListener messageListener){
             super(itemContainerReceivedMessageBinding.getRoot());
             binding = itemContainerReceivedMessageBinding;
+            binding.textMessage.setOnLongClickListener(v -> {
+                messageListener.onMessageLongClicked(chatMessage);
+                return true;
+            });
         }
        void setData(ChatMessage chatMessage, Bitmap receiverProfileImage){
+            this.chatMessage = chatMessage;
           binding.textMessage.setText(chatMessage.message);
-            binding.textDateTime.setText(chatMessage.dateTime);
-            if(receiverProfileImage != null){
-                binding.imageProfile.setImageBitmap(receiverProfileImage);
+            binding.textDateTime.setText(dateTimeOf(chatMessage, binding.textDateTime));
+            setReactions(binding.textReactions, chatMessage.reactions);
+            setProfileImage(receiverProfileImage);
+        }
 
+        void setProfileImage(Bitmap receiverProfileImage){
+            if(receiverProfileImage != null && receiverProfileImage != shownProfileImage){
+                binding.imageProfile.setImageBitmap(receiverProfileImage);
+                shownProfileImage = receiverProfileImage;
             }
         }
     }
@@ -1,36 +1,61 @@
 package com.example.fbct2.adapters;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.fbct2.databinding.ItemContainerRecentConversionBinding;
 import com.example.fbct2.listeners.ConversionListener;
 import com.example.fbct2.models.ChatMessage;
 import com.example.fbct2.models.User;
+import com.example.fbct2.utilities.AvatarLoader;
 import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.Metrics;
 import com.example.fbct2.utilities.PreferenceManager;
+import com.example.fbct2.utilities.Tracing;
 
 import java.util.List;
+import java.util.Objects;
 
 public class RecentConversationsAdapter extends RecyclerView.Adapter<RecentConversationsAdapter.ConversionViewHolder> {
 
-    private final List<ChatMessage> chatMessages;
+    // El diff se calcula en un hilo de fondo; solo se notifican las filas que cambiaron
+    private static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK = new DiffUtil.ItemCallback<ChatMessage>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return oldItem.conversionId.equals(newItem.conversionId);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return Objects.equals(oldItem.message, newItem.message)
+                    && Objects.equals(oldItem.dateObject, newItem.dateObject)
+                    && Objects.equals(oldItem.conversionName, newItem.conversionName)
+                    && Objects.equals(oldItem.conversionImage, newItem.conversionImage)
+                    && Objects.equals(oldItem.conversionImageId, newItem.conversionImageId);
+        }
+    };
+
+    private static final Metrics.Histogram BIND_TIME = Metrics.getInstance().histogram("conversations.adapter.bind");
+
+    private final AsyncListDiffer<ChatMessage> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private final ConversionListener conversionListener;
     private final PreferenceManager preferenceManager;
 
-    public RecentConversationsAdapter(List<ChatMessage> chatMessages, ConversionListener conversionListener, Context context) {
-        this.chatMessages = chatMessages;
+    public RecentConversationsAdapter(ConversionListener conversionListener, Context context) {
         this.conversionListener = conversionListener;
         this.preferenceManager = new PreferenceManager(context);  // Inicializa PreferenceManager
     }
 
+    public void submitList(List<ChatMessage> conversations, Runnable commitCallback) {
+        differ.submitList(conversations, commitCallback);
+    }
+
     @NonNull
     @Override
     public ConversionViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -40,12 +65,22 @@ public class RecentConversationsAdapter extends RecyclerView.Adapter<RecentConve
 
     @Override
     public void onBindViewHolder(@NonNull ConversionViewHolder holder, int position) {
-        holder.setData(chatMessages.get(position));
+        long start = Tracing.begin("RecentConversationsAdapter.bind");
+        try {
+            holder.setData(differ.getCurrentList().get(position));
+        } finally {
+            Tracing.end(BIND_TIME, start);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ConversionViewHolder holder) {
+        AvatarLoader.getInstance(holder.itemView.getContext()).cancel(holder.binding.imageProfile);
     }
 
     @Override
     public int getItemCount() {
-        return chatMessages.size();
+        return differ.getCurrentList().size();
     }
 
     class ConversionViewHolder extends RecyclerView.ViewHolder {
@@ -57,12 +92,9 @@ public class RecentConversationsAdapter extends RecyclerView.Adapter<RecentConve
         }
 
         void setData(ChatMessage chatMessage) {
-            Bitmap conversionImage = getConversionImage(chatMessage.conversionImage);
-            if (conversionImage != null) {
-                binding.imageProfile.setImageBitmap(conversionImage); // Establece la imagen si está disponible
-            } else {
-                binding.imageProfile.setImageResource(android.R.color.transparent); // Establece imagen transparente si no está disponible
-            }
+            // Se decodifica en segundo plano; mientras tanto (o si no hay imagen) queda transparente
+            AvatarLoader.getInstance(binding.getRoot().getContext())
+                    .load(chatMessage.conversionImageId, chatMessage.conversionImage, binding.imageProfile);
 
             binding.textName.setText(chatMessage.conversionName);  // Asegúrate de que se establece el nombre correctamente
             binding.textRecentMessage.setText(chatMessage.message);
@@ -73,17 +105,10 @@ public class RecentConversationsAdapter extends RecyclerView.Adapter<RecentConve
                 user.id = chatMessage.senderId.equals(preferenceManager.getString(Constants.KEY_USER_ID)) ? chatMessage.receiverId : chatMessage.senderId;
                 user.name = chatMessage.conversionName;
                 user.image = chatMessage.conversionImage;
+                user.imageId = chatMessage.conversionImageId;
                 conversionListener.onConversionClicked(user);  // Asegúrate de enviar el usuario correcto
             });
         }
 
     }
-
-    private Bitmap getConversionImage(String encodedImage) {
-        if (encodedImage == null || encodedImage.isEmpty()) {
-            return null;
-        }
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
 }
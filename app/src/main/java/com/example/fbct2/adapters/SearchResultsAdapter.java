@@ -0,0 +1,69 @@
+package com.example.fbct2.adapters;
+
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.fbct2.databinding.ItemContainerSearchResultBinding;
+import com.example.fbct2.listeners.SearchResultListener;
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchResultsAdapter extends RecyclerView.Adapter<SearchResultsAdapter.SearchResultViewHolder> {
+
+    private final List<ChatMessage> results = new ArrayList<>();
+    private final SearchResultListener searchResultListener;
+
+    public SearchResultsAdapter(SearchResultListener searchResultListener) {
+        this.searchResultListener = searchResultListener;
+    }
+
+    // Cada búsqueda reemplaza la lista entera; el orden lo decide el ranking, así que no hay nada que diferenciar
+    public void setResults(List<ChatMessage> results) {
+        this.results.clear();
+        this.results.addAll(results);
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new SearchResultViewHolder(
+                ItemContainerSearchResultBinding.inflate(
+                        LayoutInflater.from(parent.getContext()),
+                        parent,
+                        false
+                )
+        );
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        holder.setData(results.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        ItemContainerSearchResultBinding binding;
+
+        SearchResultViewHolder(ItemContainerSearchResultBinding itemContainerSearchResultBinding) {
+            super(itemContainerSearchResultBinding.getRoot());
+            binding = itemContainerSearchResultBinding;
+        }
+
+        void setData(ChatMessage chatMessage) {
+            binding.textName.setText(chatMessage.conversionName);
+            binding.textMessage.setText(chatMessage.message);
+            binding.textDateTime.setText(chatMessage.dateTime);
+            binding.getRoot().setOnClickListener(v -> searchResultListener.onSearchResultClicked(chatMessage));
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package com.example.fbct2.adapters;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
@@ -12,19 +9,38 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.fbct2.databinding.ItemContainerUserBinding;
 import com.example.fbct2.listeners.UserListener;
 import com.example.fbct2.models.User;
+import com.example.fbct2.utilities.AvatarLoader;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHolder> {
 
-    private final List<User> users;
+    private final List<User> users = new ArrayList<>();
     private final UserListener userListener;
 
-    public UsersAdapter(List<User> users, UserListener userListener) {
-        this.users = users;
+    public UsersAdapter(UserListener userListener) {
         this.userListener = userListener;
     }
 
+    // Las páginas siguientes se agregan al final sin volver a enlazar las filas ya visibles
+    public void addUsers(List<User> page) {
+        int start = users.size();
+        users.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    // Tras una sincronización se reemplaza el rango ya cargado
+    public void setUsers(List<User> loaded) {
+        users.clear();
+        users.addAll(loaded);
+        notifyDataSetChanged();
+    }
+
+    public User last() {
+        return users.isEmpty() ? null : users.get(users.size() - 1);
+    }
+
     @NonNull
     @Override
     public UsersAdapter.UserViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -40,6 +56,11 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
 
     }
 
+    @Override
+    public void onViewRecycled(@NonNull UsersAdapter.UserViewHolder holder) {
+        AvatarLoader.getInstance(holder.itemView.getContext()).cancel(holder.binding.imageProfile);
+    }
+
     @Override
     public int getItemCount() {
         return users.size();
@@ -54,12 +75,8 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
         void setUserData(User user) {
             binding.textName.setText(user.name);
             binding.textEmail.setText(user.email);
-            binding.imageProfile.setImageBitmap(getUserImage(user.image));
+            AvatarLoader.getInstance(binding.getRoot().getContext()).load(user.imageId, user.image, binding.imageProfile);
             binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
         }
     }
-    private Bitmap getUserImage(String encodedImage) {
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
 }
@@ -0,0 +1,160 @@
+package com.example.fbct2.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+// Copia local de mensajes, conversaciones y directorio de usuarios; Firestore sigue siendo la fuente de verdad
+public class ChatDatabase extends SQLiteOpenHelper {
+
+    private static final String NAME = "chat.db";
+    private static final int VERSION = 7;
+
+    public static final String TABLE_MESSAGES = "messages";
+    public static final String TABLE_CONVERSATIONS = "conversations";
+    public static final String TABLE_USERS = "users";
+    // Notificaciones push pendientes de enviar; sobreviven a la muerte del proceso
+    public static final String TABLE_OUTBOX = "outbox";
+    // Índice de texto completo sobre messages.message; los triggers lo mantienen al día
+    public static final String TABLE_MESSAGES_FTS = "messages_fts";
+
+    public static final String COLUMN_ID = "id";
+    public static final String COLUMN_CONVERSATION_KEY = "conversation_key";
+    public static final String COLUMN_OWNER_ID = "owner_id";
+    public static final String COLUMN_SENDER_ID = "sender_id";
+    public static final String COLUMN_RECEIVER_ID = "receiver_id";
+    public static final String COLUMN_MESSAGE = "message";
+    public static final String COLUMN_TIMESTAMP = "timestamp";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_IMAGE = "image";
+    public static final String COLUMN_IMAGE_ID = "image_id";
+    public static final String COLUMN_EMAIL = "email";
+    public static final String COLUMN_RECEIVER_TOKEN = "receiver_token";
+    public static final String COLUMN_SENDER_NAME = "sender_name";
+    public static final String COLUMN_SENDER_TOKEN = "sender_token";
+    public static final String COLUMN_MESSAGE_COUNT = "message_count";
+    public static final String COLUMN_ATTEMPTS = "attempts";
+    public static final String COLUMN_NEXT_ATTEMPT_AT = "next_attempt_at";
+    public static final String COLUMN_IN_FLIGHT = "in_flight";
+    // Arreglo JSON con id, texto y fecha de cada mensaje agrupado en la notificación
+    public static final String COLUMN_PAYLOAD = "payload";
+    // 1 mientras el servidor no confirma un mensaje enviado desde aquí
+    public static final String COLUMN_PENDING = "pending";
+    public static final String COLUMN_EDITED = "edited";
+    // Objeto JSON de id de usuario a emoji
+    public static final String COLUMN_REACTIONS = "reactions";
+
+    private static ChatDatabase instance;
+
+    private ChatDatabase(Context context) {
+        super(context.getApplicationContext(), NAME, null, VERSION);
+    }
+
+    // Un solo helper por proceso: varios abriendo el mismo archivo competirían por el WAL
+    public static synchronized ChatDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatDatabase(context);
+        }
+        return instance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CONVERSATION_KEY + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_RECEIVER_ID + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + COLUMN_PENDING + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_EDITED + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_REACTIONS + " TEXT)");
+        db.execSQL("CREATE INDEX messages_by_conversation ON " + TABLE_MESSAGES
+                + " (" + COLUMN_CONVERSATION_KEY + ", " + COLUMN_TIMESTAMP + ")");
+        db.execSQL("CREATE TABLE " + TABLE_CONVERSATIONS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_OWNER_ID + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_RECEIVER_ID + " TEXT, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_IMAGE + " TEXT, "
+                + COLUMN_IMAGE_ID + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER)");
+        createMessagesFts(db);
+        createUsers(db);
+        createOutbox(db);
+    }
+
+    private static void createUsers(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_NAME + " TEXT NOT NULL, "
+                + COLUMN_EMAIL + " TEXT, "
+                + COLUMN_IMAGE + " TEXT, "
+                + COLUMN_IMAGE_ID + " TEXT)");
+        // El directorio se pagina por (nombre, id)
+        db.execSQL("CREATE INDEX users_by_name ON " + TABLE_USERS + " (" + COLUMN_NAME + ", " + COLUMN_ID + ")");
+    }
+
+    private static void createMessagesFts(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_MESSAGES_FTS + " USING fts4(content=\"" + TABLE_MESSAGES
+                + "\", " + COLUMN_MESSAGE + ")");
+        db.execSQL("CREATE TRIGGER messages_fts_after_insert AFTER INSERT ON " + TABLE_MESSAGES + " BEGIN "
+                + "INSERT INTO " + TABLE_MESSAGES_FTS + " (docid, " + COLUMN_MESSAGE + ") VALUES (new.rowid, new." + COLUMN_MESSAGE + "); END");
+        db.execSQL("CREATE TRIGGER messages_fts_before_update BEFORE UPDATE ON " + TABLE_MESSAGES + " BEGIN "
+                + "DELETE FROM " + TABLE_MESSAGES_FTS + " WHERE docid = old.rowid; END");
+        db.execSQL("CREATE TRIGGER messages_fts_after_update AFTER UPDATE ON " + TABLE_MESSAGES + " BEGIN "
+                + "INSERT INTO " + TABLE_MESSAGES_FTS + " (docid, " + COLUMN_MESSAGE + ") VALUES (new.rowid, new." + COLUMN_MESSAGE + "); END");
+        db.execSQL("CREATE TRIGGER messages_fts_before_delete BEFORE DELETE ON " + TABLE_MESSAGES + " BEGIN "
+                + "DELETE FROM " + TABLE_MESSAGES_FTS + " WHERE docid = old.rowid; END");
+    }
+
+    private static void createOutbox(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_RECEIVER_ID + " TEXT NOT NULL, "
+                + COLUMN_RECEIVER_TOKEN + " TEXT NOT NULL, "
+                + COLUMN_SENDER_ID + " TEXT, "
+                + COLUMN_SENDER_NAME + " TEXT, "
+                + COLUMN_SENDER_TOKEN + " TEXT, "
+                + COLUMN_MESSAGE + " TEXT, "
+                + COLUMN_MESSAGE_COUNT + " INTEGER NOT NULL DEFAULT 1, "
+                + COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_NEXT_ATTEMPT_AT + " INTEGER NOT NULL, "
+                + COLUMN_IN_FLIGHT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_PAYLOAD + " TEXT)");
+        db.execSQL("CREATE INDEX outbox_by_receiver ON " + TABLE_OUTBOX + " (" + COLUMN_RECEIVER_ID + ")");
+    }
+
+    // Cada paso lleva el esquema una versión adelante; las tablas nuevas se crean ya con su forma actual
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createMessagesFts(db);
+            db.execSQL("INSERT INTO " + TABLE_MESSAGES_FTS + " (" + TABLE_MESSAGES_FTS + ") VALUES ('rebuild')");
+        }
+        if (oldVersion < 3) {
+            createUsers(db);
+        }
+        if (oldVersion < 4) {
+            createOutbox(db);
+        }
+        if (oldVersion < 5) {
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_PENDING + " INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion >= 4 && oldVersion < 6) {
+            db.execSQL("ALTER TABLE " + TABLE_OUTBOX + " ADD COLUMN " + COLUMN_PAYLOAD + " TEXT");
+        }
+        if (oldVersion < 7) {
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_EDITED + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_MESSAGES + " ADD COLUMN " + COLUMN_REACTIONS + " TEXT");
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package com.example.fbct2.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.models.User;
+import com.example.fbct2.utilities.ChatBackend;
+import com.example.fbct2.utilities.ChatSession;
+import com.example.fbct2.utilities.ConversationKeys;
+import com.example.fbct2.utilities.MessageCursor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Almacén local de mensajes y conversaciones. Las pantallas pintan primero lo que hay aquí y los
+ * snapshots de Firestore se aplican como upserts; los observers solo reciben lo que cambió.
+ * Todo el acceso a SQLite ocurre en un único hilo; callbacks y observers corren en el hilo principal.
+ */
+public class MessageStore implements ChatSession.Store {
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public interface MessageObserver {
+        void onMessagesAdded(List<ChatMessage> messages);
+
+        // Ediciones y reacciones sobre mensajes que ya estaban en el almacén
+        void onMessagesChanged(List<ChatMessage> messages);
+
+        void onMessagesRemoved(List<String> messageIds);
+    }
+
+    public interface ConversationObserver {
+        void onConversationsChanged(List<ChatMessage> upserted, List<String> removedIds);
+    }
+
+    // Tope de coincidencias a puntuar por búsqueda, para que palabras muy comunes no recorran todo el historial
+    private static final int SEARCH_CANDIDATES = 1000;
+    // Antes de (timestamp, id): los mensajes del mismo milisegundo se desempatan por id, como en Firestore
+    private static final String BEFORE_CURSOR = "(" + ChatDatabase.COLUMN_TIMESTAMP + " < ? OR ("
+            + ChatDatabase.COLUMN_TIMESTAMP + " = ? AND " + ChatDatabase.COLUMN_ID + " < ?))";
+
+    private static MessageStore instance;
+
+    private static class ScoredMessage {
+        final ChatMessage message;
+        final double score;
+
+        ScoredMessage(ChatMessage message, double score) {
+            this.message = message;
+            this.score = score;
+        }
+    }
+
+    private final ChatDatabase chatDatabase;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Solo se modifican desde el hilo principal
+    private final Map<String, List<MessageObserver>> messageObservers = new HashMap<>();
+    private final List<ConversationObserver> conversationObservers = new ArrayList<>();
+
+    private MessageStore(Context context) {
+        chatDatabase = ChatDatabase.getInstance(context);
+    }
+
+    public static synchronized MessageStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new MessageStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void observeMessages(String conversationKey, MessageObserver observer) {
+        List<MessageObserver> observers = messageObservers.get(conversationKey);
+        if (observers == null) {
+            observers = new ArrayList<>();
+            messageObservers.put(conversationKey, observers);
+        }
+        observers.add(observer);
+    }
+
+    public void removeMessageObserver(String conversationKey, MessageObserver observer) {
+        List<MessageObserver> observers = messageObservers.get(conversationKey);
+        if (observers != null) {
+            observers.remove(observer);
+        }
+    }
+
+    public void observeConversations(ConversationObserver observer) {
+        conversationObservers.add(observer);
+    }
+
+    public void removeConversationObserver(ConversationObserver observer) {
+        conversationObservers.remove(observer);
+    }
+
+    // Los mensajes más recientes de la conversación, en orden ascendente
+    public void loadLatestMessages(String conversationKey, int limit, Callback<List<ChatMessage>> callback) {
+        executor.execute(() -> {
+            List<ChatMessage> messages = queryMessages(conversationKey, null, limit);
+            mainHandler.post(() -> callback.onResult(messages));
+        });
+    }
+
+    public void loadMessagesBefore(String conversationKey, MessageCursor before, int limit,
+                                   Callback<List<ChatMessage>> callback) {
+        executor.execute(() -> {
+            List<ChatMessage> messages = queryMessages(conversationKey, before, limit);
+            mainHandler.post(() -> callback.onResult(messages));
+        });
+    }
+
+    // Desde `from` (incluido) hasta `before` (excluido), en orden ascendente; se usa para saltar a un resultado de búsqueda
+    public void loadMessagesBetween(String conversationKey, Date from, MessageCursor before,
+                                    Callback<List<ChatMessage>> callback) {
+        executor.execute(() -> {
+            List<ChatMessage> messages = new ArrayList<>();
+            String[] beforeArgs = beforeArgs(before);
+            try (Cursor cursor = chatDatabase.getReadableDatabase().query(ChatDatabase.TABLE_MESSAGES, null,
+                    ChatDatabase.COLUMN_CONVERSATION_KEY + " = ? AND " + ChatDatabase.COLUMN_TIMESTAMP + " >= ? AND "
+                            + BEFORE_CURSOR,
+                    new String[]{conversationKey, String.valueOf(from.getTime()), beforeArgs[0], beforeArgs[1],
+                            beforeArgs[2]},
+                    null, null, ChatDatabase.COLUMN_TIMESTAMP + " ASC, " + ChatDatabase.COLUMN_ID + " ASC")) {
+                while (cursor.moveToNext()) {
+                    messages.add(readMessage(cursor));
+                }
+            }
+            mainHandler.post(() -> callback.onResult(messages));
+        });
+    }
+
+    /**
+     * Búsqueda de texto completo en todas las conversaciones. Se toman los candidatos más recientes
+     * que coinciden y se ordenan por BM25; el resultado llega en el hilo principal.
+     */
+    public void searchMessages(String input, int limit, Callback<List<ChatMessage>> callback) {
+        executor.execute(() -> {
+            List<ScoredMessage> candidates = new ArrayList<>();
+            String matchQuery = SearchRanker.toMatchQuery(input);
+            if (matchQuery != null) {
+                try (Cursor cursor = chatDatabase.getReadableDatabase().rawQuery(
+                        "SELECT m.*, matchinfo(" + ChatDatabase.TABLE_MESSAGES_FTS + ", '" + SearchRanker.MATCHINFO_FORMAT + "') AS info"
+                                + " FROM " + ChatDatabase.TABLE_MESSAGES_FTS
+                                + " JOIN " + ChatDatabase.TABLE_MESSAGES + " m ON m.rowid = " + ChatDatabase.TABLE_MESSAGES_FTS + ".docid"
+                                + " WHERE " + ChatDatabase.TABLE_MESSAGES_FTS + " MATCH ?"
+                                // Por fecha del mensaje: el docid sigue el orden de inserción, y la sincronización
+                                // guarda páginas viejas después de las nuevas
+                                + " ORDER BY m." + ChatDatabase.COLUMN_TIMESTAMP + " DESC LIMIT " + SEARCH_CANDIDATES,
+                        new String[]{matchQuery})) {
+                    int infoIndex = cursor.getColumnIndexOrThrow("info");
+                    while (cursor.moveToNext()) {
+                        candidates.add(new ScoredMessage(readMessage(cursor), SearchRanker.score(cursor.getBlob(infoIndex))));
+                    }
+                }
+            }
+            // Mayor puntaje primero; a igual puntaje, el mensaje más reciente
+            Collections.sort(candidates, (obj1, obj2) -> {
+                int byScore = Double.compare(obj2.score, obj1.score);
+                return byScore != 0 ? byScore : obj2.message.dateObject.compareTo(obj1.message.dateObject);
+            });
+            List<ChatMessage> hits = new ArrayList<>();
+            for (int i = 0; i < candidates.size() && i < limit; i++) {
+                hits.add(candidates.get(i).message);
+            }
+            mainHandler.post(() -> callback.onResult(hits));
+        });
+    }
+
+    @Override
+    public void upsertMessages(List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<ChatMessage> batch = new ArrayList<>(messages);
+        executor.execute(() -> {
+            Map<String, List<ChatMessage>> added = new HashMap<>();
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (ChatMessage chatMessage : batch) {
+                    String conversationKey = ConversationKeys.of(chatMessage.senderId, chatMessage.receiverId);
+                    ContentValues values = new ContentValues();
+                    values.put(ChatDatabase.COLUMN_ID, chatMessage.id);
+                    values.put(ChatDatabase.COLUMN_CONVERSATION_KEY, conversationKey);
+                    values.put(ChatDatabase.COLUMN_SENDER_ID, chatMessage.senderId);
+                    values.put(ChatDatabase.COLUMN_RECEIVER_ID, chatMessage.receiverId);
+                    values.put(ChatDatabase.COLUMN_MESSAGE, chatMessage.message);
+                    values.put(ChatDatabase.COLUMN_TIMESTAMP, chatMessage.dateObject.getTime());
+                    values.put(ChatDatabase.COLUMN_PENDING, chatMessage.pending ? 1 : 0);
+                    values.put(ChatDatabase.COLUMN_EDITED, chatMessage.edited ? 1 : 0);
+                    values.put(ChatDatabase.COLUMN_REACTIONS, reactionsToJson(chatMessage.reactions));
+                    long rowId = db.insertWithOnConflict(ChatDatabase.TABLE_MESSAGES, null, values,
+                            SQLiteDatabase.CONFLICT_IGNORE);
+                    if (rowId == -1) {
+                        // El eco local de una escritura no debe volver a marcar como pendiente un mensaje confirmado
+                        if (chatMessage.pending) {
+                            values.remove(ChatDatabase.COLUMN_PENDING);
+                        }
+                        db.update(ChatDatabase.TABLE_MESSAGES, values, ChatDatabase.COLUMN_ID + " = ?",
+                                new String[]{chatMessage.id});
+                    } else {
+                        List<ChatMessage> forConversation = added.get(conversationKey);
+                        if (forConversation == null) {
+                            forConversation = new ArrayList<>();
+                            added.put(conversationKey, forConversation);
+                        }
+                        forConversation.add(chatMessage);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (!added.isEmpty()) {
+                mainHandler.post(() -> {
+                    for (Map.Entry<String, List<ChatMessage>> entry : added.entrySet()) {
+                        List<MessageObserver> observers = messageObservers.get(entry.getKey());
+                        if (observers != null) {
+                            for (MessageObserver observer : new ArrayList<>(observers)) {
+                                observer.onMessagesAdded(entry.getValue());
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Aplica ediciones, reacciones y borrados. Solo se actualizan filas que ya existen: un mensaje viejo
+     * que nunca se cargó no debe aparecer suelto en el almacén, porque la paginación local daría por
+     * cubierto el hueco que lo separa del resto.
+     */
+    @Override
+    public void applyMessageChanges(List<ChatMessage> changes, List<String> removedIds) {
+        if (changes.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+        List<ChatMessage> batch = new ArrayList<>(changes);
+        List<String> removals = new ArrayList<>(removedIds);
+        executor.execute(() -> {
+            Map<String, List<ChatMessage>> changed = new HashMap<>();
+            Map<String, List<String>> removed = new HashMap<>();
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (ChatMessage chatMessage : batch) {
+                    ContentValues values = new ContentValues();
+                    values.put(ChatDatabase.COLUMN_MESSAGE, chatMessage.message);
+                    values.put(ChatDatabase.COLUMN_EDITED, chatMessage.edited ? 1 : 0);
+                    values.put(ChatDatabase.COLUMN_REACTIONS, reactionsToJson(chatMessage.reactions));
+                    if (db.update(ChatDatabase.TABLE_MESSAGES, values, ChatDatabase.COLUMN_ID + " = ?",
+                            new String[]{chatMessage.id}) > 0) {
+                        String conversationKey = ConversationKeys.of(chatMessage.senderId, chatMessage.receiverId);
+                        List<ChatMessage> forConversation = changed.get(conversationKey);
+                        if (forConversation == null) {
+                            forConversation = new ArrayList<>();
+                            changed.put(conversationKey, forConversation);
+                        }
+                        forConversation.add(chatMessage);
+                    }
+                }
+                for (String messageId : removals) {
+                    String conversationKey = null;
+                    try (Cursor cursor = db.query(ChatDatabase.TABLE_MESSAGES,
+                            new String[]{ChatDatabase.COLUMN_CONVERSATION_KEY}, ChatDatabase.COLUMN_ID + " = ?",
+                            new String[]{messageId}, null, null, null)) {
+                        if (cursor.moveToFirst()) {
+                            conversationKey = cursor.getString(0);
+                        }
+                    }
+                    if (conversationKey == null) {
+                        continue;
+                    }
+                    db.delete(ChatDatabase.TABLE_MESSAGES, ChatDatabase.COLUMN_ID + " = ?", new String[]{messageId});
+                    List<String> forConversation = removed.get(conversationKey);
+                    if (forConversation == null) {
+                        forConversation = new ArrayList<>();
+                        removed.put(conversationKey, forConversation);
+                    }
+                    forConversation.add(messageId);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (changed.isEmpty() && removed.isEmpty()) {
+                return;
+            }
+            mainHandler.post(() -> {
+                for (Map.Entry<String, List<ChatMessage>> entry : changed.entrySet()) {
+                    List<MessageObserver> observers = messageObservers.get(entry.getKey());
+                    if (observers != null) {
+                        for (MessageObserver observer : new ArrayList<>(observers)) {
+                            observer.onMessagesChanged(entry.getValue());
+                        }
+                    }
+                }
+                for (Map.Entry<String, List<String>> entry : removed.entrySet()) {
+                    List<MessageObserver> observers = messageObservers.get(entry.getKey());
+                    if (observers != null) {
+                        for (MessageObserver observer : new ArrayList<>(observers)) {
+                            observer.onMessagesRemoved(entry.getValue());
+                        }
+                    }
+                }
+            });
+        });
+    }
+
+    @Override
+    public void loadPendingMessages(String conversationKey, ChatBackend.Callback<List<ChatMessage>> callback) {
+        executor.execute(() -> {
+            List<ChatMessage> messages = new ArrayList<>();
+            try (Cursor cursor = chatDatabase.getReadableDatabase().query(ChatDatabase.TABLE_MESSAGES, null,
+                    ChatDatabase.COLUMN_CONVERSATION_KEY + " = ? AND " + ChatDatabase.COLUMN_PENDING + " = 1",
+                    new String[]{conversationKey}, null, null, ChatDatabase.COLUMN_TIMESTAMP + " ASC")) {
+                while (cursor.moveToNext()) {
+                    messages.add(readMessage(cursor));
+                }
+            }
+            mainHandler.post(() -> callback.onResult(messages));
+        });
+    }
+
+    @Override
+    public void markSent(String messageId) {
+        executor.execute(() -> {
+            ContentValues values = new ContentValues();
+            values.put(ChatDatabase.COLUMN_PENDING, 0);
+            chatDatabase.getWritableDatabase().update(ChatDatabase.TABLE_MESSAGES, values,
+                    ChatDatabase.COLUMN_ID + " = ?", new String[]{messageId});
+        });
+    }
+
+    // Conversaciones del usuario, de la más nueva a la más vieja
+    public void loadConversations(String ownerId, Callback<List<ChatMessage>> callback) {
+        executor.execute(() -> {
+            List<ChatMessage> conversations = new ArrayList<>();
+            try (Cursor cursor = chatDatabase.getReadableDatabase().query(ChatDatabase.TABLE_CONVERSATIONS, null,
+                    ChatDatabase.COLUMN_OWNER_ID + " = ?", new String[]{ownerId},
+                    null, null, ChatDatabase.COLUMN_TIMESTAMP + " DESC")) {
+                while (cursor.moveToNext()) {
+                    conversations.add(readConversation(cursor));
+                }
+            }
+            mainHandler.post(() -> callback.onResult(conversations));
+        });
+    }
+
+    public void upsertConversations(String ownerId, List<ChatMessage> conversations, List<String> removedIds) {
+        if (conversations.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+        List<ChatMessage> upserted = new ArrayList<>(conversations);
+        List<String> removed = new ArrayList<>(removedIds);
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (ChatMessage conversation : upserted) {
+                    ContentValues values = new ContentValues();
+                    values.put(ChatDatabase.COLUMN_ID, conversation.conversionId);
+                    values.put(ChatDatabase.COLUMN_OWNER_ID, ownerId);
+                    values.put(ChatDatabase.COLUMN_SENDER_ID, conversation.senderId);
+                    values.put(ChatDatabase.COLUMN_RECEIVER_ID, conversation.receiverId);
+                    values.put(ChatDatabase.COLUMN_NAME, conversation.conversionName);
+                    values.put(ChatDatabase.COLUMN_IMAGE, conversation.conversionImage);
+                    values.put(ChatDatabase.COLUMN_IMAGE_ID, conversation.conversionImageId);
+                    values.put(ChatDatabase.COLUMN_MESSAGE, conversation.message);
+                    values.put(ChatDatabase.COLUMN_TIMESTAMP,
+                            conversation.dateObject != null ? conversation.dateObject.getTime() : null);
+                    db.insertWithOnConflict(ChatDatabase.TABLE_CONVERSATIONS, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                for (String conversionId : removed) {
+                    db.delete(ChatDatabase.TABLE_CONVERSATIONS, ChatDatabase.COLUMN_ID + " = ?",
+                            new String[]{conversionId});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            mainHandler.post(() -> {
+                for (ConversationObserver observer : new ArrayList<>(conversationObservers)) {
+                    observer.onConversationsChanged(upserted, removed);
+                }
+            });
+        });
+    }
+
+    /**
+     * Página del directorio ordenada por (nombre, id), sin el usuario actual. {@code after} es el último
+     * usuario de la página anterior, o null para la primera.
+     */
+    public void loadUsers(String excludeId, User after, int limit, Callback<List<User>> callback) {
+        executor.execute(() -> {
+            String selection = ChatDatabase.COLUMN_ID + " != ?";
+            String[] selectionArgs = new String[]{excludeId};
+            if (after != null) {
+                selection += " AND (" + ChatDatabase.COLUMN_NAME + " > ? OR (" + ChatDatabase.COLUMN_NAME + " = ? AND "
+                        + ChatDatabase.COLUMN_ID + " > ?))";
+                selectionArgs = new String[]{excludeId, after.name, after.name, after.id};
+            }
+            List<User> users = new ArrayList<>();
+            try (Cursor cursor = chatDatabase.getReadableDatabase().query(ChatDatabase.TABLE_USERS, null,
+                    selection, selectionArgs, null, null,
+                    ChatDatabase.COLUMN_NAME + ", " + ChatDatabase.COLUMN_ID, String.valueOf(limit))) {
+                while (cursor.moveToNext()) {
+                    users.add(readUser(cursor));
+                }
+            }
+            mainHandler.post(() -> callback.onResult(users));
+        });
+    }
+
+    // `onDone` corre en el hilo principal cuando los usuarios ya están escritos
+    public void upsertUsers(List<User> users, Runnable onDone) {
+        List<User> pending = new ArrayList<>(users);
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (User user : pending) {
+                    ContentValues values = new ContentValues();
+                    values.put(ChatDatabase.COLUMN_ID, user.id);
+                    values.put(ChatDatabase.COLUMN_NAME, user.name);
+                    values.put(ChatDatabase.COLUMN_EMAIL, user.email);
+                    values.put(ChatDatabase.COLUMN_IMAGE, user.image);
+                    values.put(ChatDatabase.COLUMN_IMAGE_ID, user.imageId);
+                    db.insertWithOnConflict(ChatDatabase.TABLE_USERS, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            mainHandler.post(onDone);
+        });
+    }
+
+    // Al cerrar sesión no deben quedar mensajes del usuario anterior, ni notificaciones suyas por enviar
+    public void clear() {
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            db.delete(ChatDatabase.TABLE_MESSAGES, null, null);
+            db.delete(ChatDatabase.TABLE_CONVERSATIONS, null, null);
+            db.delete(ChatDatabase.TABLE_USERS, null, null);
+            db.delete(ChatDatabase.TABLE_OUTBOX, null, null);
+        });
+    }
+
+    // `before` null: desde el mensaje más nuevo
+    private List<ChatMessage> queryMessages(String conversationKey, MessageCursor before, int limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        String selection = ChatDatabase.COLUMN_CONVERSATION_KEY + " = ?";
+        String[] args = {conversationKey};
+        if (before != null) {
+            String[] beforeArgs = beforeArgs(before);
+            selection += " AND " + BEFORE_CURSOR;
+            args = new String[]{conversationKey, beforeArgs[0], beforeArgs[1], beforeArgs[2]};
+        }
+        try (Cursor cursor = chatDatabase.getReadableDatabase().query(ChatDatabase.TABLE_MESSAGES, null,
+                selection, args, null, null,
+                ChatDatabase.COLUMN_TIMESTAMP + " DESC, " + ChatDatabase.COLUMN_ID + " DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                messages.add(readMessage(cursor));
+            }
+        }
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    private static String[] beforeArgs(MessageCursor before) {
+        String timestamp = String.valueOf(before.timestamp.getTime());
+        return new String[]{timestamp, timestamp, before.id};
+    }
+
+    private static ChatMessage readMessage(Cursor cursor) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ID));
+        chatMessage.senderId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_SENDER_ID));
+        chatMessage.receiverId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_RECEIVER_ID));
+        chatMessage.message = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_MESSAGE));
+        chatMessage.dateObject = new Date(cursor.getLong(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_TIMESTAMP)));
+        chatMessage.pending = cursor.getInt(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_PENDING)) == 1;
+        chatMessage.edited = cursor.getInt(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_EDITED)) == 1;
+        chatMessage.reactions = reactionsFromJson(cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_REACTIONS)));
+        return chatMessage;
+    }
+
+    private static String reactionsToJson(Map<String, String> reactions) {
+        if (reactions == null || reactions.isEmpty()) {
+            return null;
+        }
+        return new JSONObject(reactions).toString();
+    }
+
+    private static Map<String, String> reactionsFromJson(String json) {
+        if (json == null) {
+            return null;
+        }
+        Map<String, String> reactions = new HashMap<>();
+        try {
+            JSONObject object = new JSONObject(json);
+            Iterator<String> userIds = object.keys();
+            while (userIds.hasNext()) {
+                String userId = userIds.next();
+                reactions.put(userId, object.getString(userId));
+            }
+        } catch (JSONException e) {
+            return null;
+        }
+        return reactions;
+    }
+
+    private static ChatMessage readConversation(Cursor cursor) {
+        ChatMessage conversation = new ChatMessage();
+        conversation.conversionId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ID));
+        conversation.senderId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_SENDER_ID));
+        conversation.receiverId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_RECEIVER_ID));
+        conversation.conversionName = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_NAME));
+        conversation.conversionImage = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE));
+        conversation.conversionImageId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE_ID));
+        conversation.message = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_MESSAGE));
+        int timestampIndex = cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_TIMESTAMP);
+        if (!cursor.isNull(timestampIndex)) {
+            conversation.dateObject = new Date(cursor.getLong(timestampIndex));
+        }
+        return conversation;
+    }
+
+    private static User readUser(Cursor cursor) {
+        User user = new User();
+        user.id = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_ID));
+        user.name = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_NAME));
+        user.email = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_EMAIL));
+        user.image = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE));
+        user.imageId = cursor.getString(cursor.getColumnIndexOrThrow(ChatDatabase.COLUMN_IMAGE_ID));
+        return user;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.fbct2.database;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+// Puntaje BM25 a partir del blob matchinfo(messages_fts, 'pcnalx') de SQLite FTS4
+public class SearchRanker {
+
+    public static final String MATCHINFO_FORMAT = "pcnalx";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private SearchRanker() {
+    }
+
+    /**
+     * Convierte el texto escrito por el usuario en una consulta MATCH: cada palabra se busca como
+     * prefijo y todas deben aparecer. Devuelve null si no queda ninguna palabra.
+     */
+    public static String toMatchQuery(String input) {
+        StringBuilder query = new StringBuilder();
+        for (String token : input.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(token).append('*');
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    public static double score(byte[] matchinfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        int rows = buffer.getInt(8);
+        // Después de p, c y n vienen a[c], l[c] y x[3 * c * p]
+        int averageOffset = 3;
+        int lengthOffset = averageOffset + columns;
+        int hitsOffset = lengthOffset + columns;
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int hits = hitsOffset + 3 * (phrase * columns + column);
+                int termFrequency = buffer.getInt(hits * 4);
+                int documentsWithHits = buffer.getInt((hits + 2) * 4);
+                if (termFrequency == 0) {
+                    continue;
+                }
+                double averageLength = Math.max(1, buffer.getInt((averageOffset + column) * 4));
+                double length = buffer.getInt((lengthOffset + column) * 4);
+                double idf = Math.log((rows - documentsWithHits + 0.5) / (documentsWithHits + 0.5) + 1);
+                score += idf * termFrequency * (K1 + 1)
+                        / (termFrequency + K1 * (1 - B + B * length / averageLength));
+            }
+        }
+        return score;
+    }
+}
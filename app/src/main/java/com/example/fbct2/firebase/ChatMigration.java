@@ -0,0 +1,85 @@
+package com.example.fbct2.firebase;
+
+import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.ConversationKeys;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+// Lleva a la clave canónica los documentos de `chat` y `conversations` creados antes de que existiera
+public class ChatMigration {
+
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private ChatMigration() {
+    }
+
+    public static Task<Void> migrateConversation(FirebaseFirestore database, String userId, String otherUserId) {
+        String conversationKey = ConversationKeys.of(userId, otherUserId);
+        Task<QuerySnapshot> sentTask = legacyMessages(database, userId, otherUserId);
+        Task<QuerySnapshot> receivedTask = legacyMessages(database, otherUserId, userId);
+        return Tasks.whenAll(sentTask, receivedTask).continueWithTask(task -> {
+            if (!task.isSuccessful()) {
+                return Tasks.forException(task.getException());
+            }
+            List<DocumentSnapshot> pending = new ArrayList<>();
+            for (Task<QuerySnapshot> result : Arrays.asList(sentTask, receivedTask)) {
+                for (DocumentSnapshot document : result.getResult().getDocuments()) {
+                    if (!conversationKey.equals(document.getString(Constants.KEY_CONVERSATION_KEY))) {
+                        pending.add(document);
+                    }
+                }
+            }
+            List<Task<Void>> commits = new ArrayList<>();
+            for (int start = 0; start < pending.size(); start += MAX_BATCH_SIZE) {
+                WriteBatch batch = database.batch();
+                for (DocumentSnapshot document : pending.subList(start, Math.min(pending.size(), start + MAX_BATCH_SIZE))) {
+                    batch.update(document.getReference(), Constants.KEY_CONVERSATION_KEY, conversationKey);
+                }
+                commits.add(batch.commit());
+            }
+            return Tasks.whenAll(commits);
+        });
+    }
+
+    /**
+     * Mueve una conversación con id aleatorio a {@code conversations/{conversationKey}} y borra la vieja.
+     * Si ya hay un documento en la clave con un mensaje más reciente, solo se borra la copia vieja;
+     * así dos duplicados de la misma pareja terminan en un único documento.
+     */
+    public static Task<Void> migrateConversationDocument(FirebaseFirestore database, DocumentSnapshot legacy) {
+        String conversationKey = ConversationKeys.of(legacy.getString(Constants.KEY_SENDER_ID),
+                legacy.getString(Constants.KEY_RECEIVER_ID));
+        DocumentReference target = database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversationKey);
+        return database.runTransaction(transaction -> {
+            DocumentSnapshot current = transaction.get(target);
+            Date currentDate = current.getDate(Constants.KEY_TIMESTAMP);
+            Date legacyDate = legacy.getDate(Constants.KEY_TIMESTAMP);
+            if (!current.exists() || (currentDate != null && legacyDate != null && legacyDate.after(currentDate))) {
+                Map<String, Object> data = legacy.getData();
+                if (data != null) {
+                    transaction.set(target, data);
+                }
+            }
+            transaction.delete(legacy.getReference());
+            return null;
+        });
+    }
+
+    private static Task<QuerySnapshot> legacyMessages(FirebaseFirestore database, String senderId, String receiverId) {
+        return database.collection(Constants.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constants.KEY_SENDER_ID, senderId)
+                .whereEqualTo(Constants.KEY_RECEIVER_ID, receiverId)
+                .get();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.fbct2.firebase;
+
+import android.util.Log;
+
+import com.example.fbct2.utilities.AvatarHash;
+import com.example.fbct2.utilities.AvatarStore;
+import com.example.fbct2.utilities.Constants;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Guarda cada avatar una vez en la colección `avatars`, con el hash del contenido como id
+public class FirestoreAvatarStore implements AvatarStore {
+
+    private static final long FETCH_TIMEOUT_SECONDS = 15;
+
+    private final FirebaseFirestore database;
+
+    public FirestoreAvatarStore(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    @Override
+    public String put(String encodedImage) {
+        String imageId = AvatarHash.of(encodedImage);
+        HashMap<String, Object> avatar = new HashMap<>();
+        avatar.put(Constants.KEY_IMAGE, encodedImage);
+        // Mismo contenido, mismo id: repetir la escritura no duplica nada
+        database.collection(Constants.KEY_COLLECTION_AVATARS).document(imageId).set(avatar);
+        return imageId;
+    }
+
+    @Override
+    public String fetch(String imageId) {
+        try {
+            DocumentSnapshot document = Tasks.await(
+                    database.collection(Constants.KEY_COLLECTION_AVATARS).document(imageId).get(),
+                    FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return document.getString(Constants.KEY_IMAGE);
+        } catch (Exception e) {
+            Log.w("FirestoreAvatarStore", "Unable to fetch avatar " + imageId, e);
+            return null;
+        }
+    }
+}
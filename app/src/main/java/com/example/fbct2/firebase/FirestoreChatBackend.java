@@ -0,0 +1,244 @@
+package com.example.fbct2.firebase;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.ChatBackend;
+import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.MessageChange;
+import com.example.fbct2.utilities.MessageCursor;
+import com.example.fbct2.utilities.MessageDocuments;
+import com.example.fbct2.utilities.MessagePage;
+import com.example.fbct2.utilities.MessageQueries;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Mensajes en la colección `chat` y resúmenes en `conversations`; los callbacks llegan en el hilo principal
+public class FirestoreChatBackend implements ChatBackend {
+
+    private final FirebaseFirestore database;
+    // Las consultas y la forma de los documentos viven en :core; aquí solo se traducen al SDK de Android
+    private final MessageQueries<Query> queries = new MessageQueries<Query>() {
+        @Override
+        protected Query messages() {
+            return database.collection(Constants.KEY_COLLECTION_CHAT);
+        }
+
+        @Override
+        protected Query whereEqualTo(Query query, String field, Object value) {
+            return query.whereEqualTo(field, value);
+        }
+
+        @Override
+        protected Query whereGreaterThan(Query query, String field, Object value) {
+            return query.whereGreaterThan(field, value);
+        }
+
+        @Override
+        protected Query orderBy(Query query, String field, boolean descending) {
+            return query.orderBy(field, descending ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        }
+
+        @Override
+        protected Query orderByDocumentId(Query query, boolean descending) {
+            return query.orderBy(FieldPath.documentId(),
+                    descending ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        }
+
+        @Override
+        protected Query startAfter(Query query, Object... values) {
+            return query.startAfter(values);
+        }
+
+        @Override
+        protected Query limit(Query query, int limit) {
+            return query.limit(limit);
+        }
+    };
+
+    public FirestoreChatBackend(FirebaseFirestore database) {
+        this.database = database;
+    }
+
+    /**
+     * Un WriteBatch mientras solo se actualiza el último mensaje. Crear la conversación depende de si ya
+     * existe, así que ese lote se confirma como transacción: lee el resumen y recién entonces decide.
+     */
+    private class FirestoreBatch implements Batch {
+        private final Map<DocumentReference, Map<String, Object>> messages = new LinkedHashMap<>();
+        private DocumentReference conversation;
+        private Map<String, Object> lastMessage;
+        // Solo si la conversación puede no existir todavía
+        private Map<String, Object> participants;
+
+        @Override
+        public void setMessage(String conversationKey, ChatMessage chatMessage) {
+            messages.put(messageDocument(chatMessage.id), MessageDocuments.toDocument(conversationKey, chatMessage));
+        }
+
+        @Override
+        public void updateConversation(String conversionId, String lastMessage, Date timestamp) {
+            conversation = conversationDocument(conversionId);
+            this.lastMessage = MessageDocuments.lastMessageFields(lastMessage, timestamp);
+            participants = null;
+        }
+
+        @Override
+        public void createOrUpdateConversation(String conversionId, Map<String, Object> participants,
+                                               String lastMessage, Date timestamp) {
+            updateConversation(conversionId, lastMessage, timestamp);
+            this.participants = new HashMap<>(participants);
+        }
+
+        @Override
+        public void commit(Completion completion) {
+            if (participants == null) {
+                WriteBatch batch = database.batch();
+                for (Map.Entry<DocumentReference, Map<String, Object>> message : messages.entrySet()) {
+                    batch.set(message.getKey(), message.getValue());
+                }
+                if (conversation != null) {
+                    batch.update(conversation, lastMessage);
+                }
+                complete(batch.commit(), completion);
+                return;
+            }
+            complete(database.runTransaction(transaction -> {
+                boolean exists = transaction.get(conversation).exists();
+                for (Map.Entry<DocumentReference, Map<String, Object>> message : messages.entrySet()) {
+                    transaction.set(message.getKey(), message.getValue());
+                }
+                if (exists) {
+                    transaction.update(conversation, lastMessage);
+                } else {
+                    transaction.set(conversation, MessageDocuments.newConversationFields(participants, lastMessage));
+                }
+                return null;
+            }), completion);
+        }
+    }
+
+    @Override
+    public String newMessageId() {
+        return database.collection(Constants.KEY_COLLECTION_CHAT).document().getId();
+    }
+
+    @Override
+    public Batch batch() {
+        return new FirestoreBatch();
+    }
+
+    // Del servidor: una página vacía sacada de la caché sin conexión no diría nada sobre la conversación
+    @Override
+    public void loadMessages(String conversationKey, MessageCursor before, int limit,
+                             Callback<MessagePage> callback) {
+        queries.page(conversationKey, before, limit).get(Source.SERVER).addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || task.getResult() == null) {
+                callback.onResult(MessagePage.failed());
+                return;
+            }
+            List<MessageChange> documents = new ArrayList<>();
+            for (DocumentSnapshot document : task.getResult().getDocuments()) {
+                documents.add(toChange(MessageChange.Type.ADDED, document));
+            }
+            callback.onResult(MessageDocuments.toPage(documents, limit));
+        });
+    }
+
+    @Override
+    public Registration listenMessages(String conversationKey, MessageCursor after, ChangeListener listener) {
+        return listen(queries.newMessages(conversationKey, after), listener);
+    }
+
+    @Override
+    public Registration listenMessageUpdates(String conversationKey, Date since, ChangeListener listener) {
+        return listen(queries.updates(conversationKey, since), listener);
+    }
+
+    @Override
+    public void editMessage(String messageId, String text, Completion completion) {
+        complete(messageDocument(messageId).update(
+                MessageDocuments.editFields(text, FieldValue.serverTimestamp())), completion);
+    }
+
+    @Override
+    public void deleteMessage(String messageId, Completion completion) {
+        complete(messageDocument(messageId).update(
+                MessageDocuments.deleteFields(FieldValue.serverTimestamp(), FieldValue.delete())), completion);
+    }
+
+    @Override
+    public void setReaction(String messageId, String userId, String emoji, Completion completion) {
+        complete(messageDocument(messageId).update(MessageDocuments.reactionFields(userId, emoji,
+                FieldValue.serverTimestamp(), FieldValue.delete())), completion);
+    }
+
+    @Override
+    public void updateLastMessage(String conversionId, String text) {
+        conversationDocument(conversionId).update(Constants.KEY_LAST_MESSAGE, text);
+    }
+
+    @Override
+    public void migrateConversation(String userId, String otherUserId, Completion completion) {
+        complete(ChatMigration.migrateConversation(database, userId, otherUserId), completion);
+    }
+
+    private Registration listen(Query query, ChangeListener listener) {
+        ListenerRegistration registration = query.addSnapshotListener((value, error) -> {
+            if (error != null || value == null) {
+                return;
+            }
+            List<MessageChange> changes = toChanges(value);
+            if (!changes.isEmpty()) {
+                listener.onChanges(changes);
+            }
+        });
+        return registration::remove;
+    }
+
+    private static List<MessageChange> toChanges(QuerySnapshot snapshot) {
+        List<MessageChange> changes = new ArrayList<>();
+        for (DocumentChange documentChange : snapshot.getDocumentChanges()) {
+            MessageChange.Type type = documentChange.getType() == DocumentChange.Type.REMOVED
+                    ? MessageChange.Type.REMOVED
+                    : documentChange.getType() == DocumentChange.Type.ADDED
+                    ? MessageChange.Type.ADDED : MessageChange.Type.MODIFIED;
+            changes.add(toChange(type, documentChange.getDocument()));
+        }
+        return changes;
+    }
+
+    private static MessageChange toChange(MessageChange.Type type, DocumentSnapshot document) {
+        Map<String, Object> data = document.getData();
+        return MessageDocuments.toChange(type, document.getId(), data != null ? data : new HashMap<>(),
+                document.getDate(Constants.KEY_TIMESTAMP), document.getDate(Constants.KEY_UPDATED_AT),
+                document.getMetadata().hasPendingWrites(), document.getMetadata().isFromCache());
+    }
+
+    private static void complete(Task<?> task, Completion completion) {
+        task.addOnCompleteListener(result -> completion.onComplete(result.isSuccessful()));
+    }
+
+    private DocumentReference messageDocument(String messageId) {
+        return database.collection(Constants.KEY_COLLECTION_CHAT).document(messageId);
+    }
+
+    private DocumentReference conversationDocument(String conversionId) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversionId);
+    }
+}
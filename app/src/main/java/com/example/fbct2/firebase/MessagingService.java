@@ -1,28 +1,24 @@
 package com.example.fbct2.firebase;
 
-
-
-import android.Manifest;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.os.Build;
-
 import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
-import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
 
-import com.example.fbct2.R;
-import com.example.fbct2.activities.ChatActivity;
+import com.example.fbct2.database.MessageStore;
+import com.example.fbct2.models.ChatMessage;
 import com.example.fbct2.models.User;
 import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.PreferenceManager;
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
 
-import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 public class MessagingService extends FirebaseMessagingService {
     @Override
@@ -30,51 +26,74 @@ public class MessagingService extends FirebaseMessagingService {
         super.onNewToken(token);
 
     }
+
+    // Cada push solo actualiza el estado del remitente; el agregador decide cuándo redibujar
     @Override
     public void onMessageReceived(@NonNull RemoteMessage remoteMessage){
         super.onMessageReceived(remoteMessage);
+        Map<String, String> data = remoteMessage.getData();
         User user = new User();
-        user.id = remoteMessage.getData().get(Constants.KEY_USER_ID);
-        user.name = remoteMessage.getData().get(Constants.KEY_NAME);
-        user.token = remoteMessage.getData().get(Constants.KEY_FCM_TOKEN);
-
-        int notificationId = new Random().nextInt();
-        String channelId = "chat_message";
-
-        Intent intent = new Intent(this, ChatActivity.class);
-        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-        intent.putExtra(Constants.KEY_USER, user);
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, intent, 0);
+        user.id = data.get(Constants.KEY_USER_ID);
+        user.name = data.get(Constants.KEY_NAME);
+        user.token = data.get(Constants.KEY_FCM_TOKEN);
+        String message = data.get(Constants.KEY_MESSAGE);
+        if (user.id == null || message == null) {
+            return;
+        }
+        long timestamp = remoteMessage.getSentTime();
+        List<ChatMessage> messages = readMessages(data.get(Constants.KEY_MESSAGES), user.id);
+        if (!messages.isEmpty()) {
+            // Al abrir el chat desde la notificación los mensajes ya están en el almacén local
+            MessageStore.getInstance(this).upsertMessages(messages);
+            timestamp = messages.get(messages.size() - 1).dateObject.getTime();
+        }
+        // Una línea por mensaje, aunque el texto tenga saltos de línea. Los push de versiones anteriores no
+        // traen la lista: ahí la cola de envío juntaba los mensajes con "\n" y solo queda partir el texto
+        List<String> lines = new ArrayList<>();
+        for (ChatMessage chatMessage : messages) {
+            lines.add(chatMessage.message);
+        }
+        if (lines.isEmpty()) {
+            lines.addAll(Arrays.asList(message.split("\n")));
+        }
+        // El payload omite los mensajes largos; la cola informa cuántos mensajes junta el push
+        int messageCount = Math.max(messages.size(), parseCount(data.get(Constants.KEY_MESSAGE_COUNT), lines.size()));
+        NotificationAggregator.getInstance(this).add(user, lines, messageCount, timestamp);
+    }
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, channelId);
-        builder.setSmallIcon(R.drawable.ic_notification);
-        builder.setContentTitle(user.name);
-        builder.setContentText(remoteMessage.getData().get(Constants.KEY_MESSAGE));
-        builder.setStyle(new NotificationCompat.BigTextStyle().bigText(remoteMessage.getData().get(Constants.KEY_MESSAGE)));
-        builder.setPriority(NotificationCompat.PRIORITY_DEFAULT);
-        builder.setContentIntent(pendingIntent);
-        builder.setAutoCancel(true);
+    private static int parseCount(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
 
-        if(Build.VERSION.SDK_INT>=Build.VERSION_CODES.O){
-            CharSequence channelName= "Chat Message";
-            String channelDescription = "This notification channel is used for chat messages notification";
-            int importance = android.app.NotificationManager.IMPORTANCE_DEFAULT;
-            NotificationChannel channel = new NotificationChannel(channelId, channelName, importance);
-            channel.setDescription(channelDescription);
-            NotificationManager notificationManager = getSystemService(NotificationManager.class);
-            notificationManager.createNotificationChannel(channel);
+    // Los push de versiones anteriores no traen la lista y se quedan solo en la notificación
+    private List<ChatMessage> readMessages(String payload, String senderId) {
+        List<ChatMessage> messages = new ArrayList<>();
+        String receiverId = new PreferenceManager(getApplicationContext()).getString(Constants.KEY_USER_ID);
+        if (payload == null || receiverId == null) {
+            return messages;
         }
-        NotificationManagerCompat notificationManagerCompat = NotificationManagerCompat.from(this);
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
-            // TODO: Consider calling
-            //    ActivityCompat#requestPermissions
-            // here to request the missing permissions, and then overriding
-            //   public void onRequestPermissionsResult(int requestCode, String[] permissions,
-            //                                          int[] grantResults)
-            // to handle the case where the user grants the permission. See the documentation
-            // for ActivityCompat#requestPermissions for more details.
-            return;
+        try {
+            JSONArray entries = new JSONArray(payload);
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                ChatMessage chatMessage = new ChatMessage();
+                chatMessage.id = entry.getString(Constants.KEY_MESSAGE_ID);
+                chatMessage.senderId = senderId;
+                chatMessage.receiverId = receiverId;
+                chatMessage.message = entry.getString(Constants.KEY_MESSAGE);
+                chatMessage.dateObject = new Date(entry.getLong(Constants.KEY_TIMESTAMP));
+                messages.add(chatMessage);
+            }
+        } catch (JSONException e) {
+            messages.clear();
         }
-        notificationManagerCompat.notify(notificationId, builder.build());
+        return messages;
     }
 }
@@ -0,0 +1,264 @@
+package com.example.fbct2.firebase;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.Person;
+
+import com.example.fbct2.R;
+import com.example.fbct2.activities.ChatActivity;
+import com.example.fbct2.activities.MainActivity;
+import com.example.fbct2.models.User;
+import com.example.fbct2.utilities.Constants;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Una notificación MessagingStyle por remitente, agrupadas bajo un resumen. Cada push solo agrega
+ * líneas al estado del remitente; el redibujado se limita a uno por intervalo, así una ráfaga de
+ * mensajes termina en pocas actualizaciones. Todo el estado se toca en el hilo principal.
+ */
+public class NotificationAggregator {
+
+    private static final String CHANNEL_ID = "chat_message";
+    private static final String GROUP_KEY = "com.example.fbct2.CHAT_MESSAGES";
+    private static final int SUMMARY_ID = 0;
+    private static final long MIN_REDRAW_INTERVAL_MS = 1_000;
+    // MessagingStyle solo muestra las últimas líneas; guardar más no aporta nada
+    private static final int MAX_LINES_PER_SENDER = 7;
+    // Mensajes sin leer del remitente, incluidos los que ya no entran en las líneas
+    private static final String EXTRA_MESSAGE_COUNT = "com.example.fbct2.MESSAGE_COUNT";
+
+    private static NotificationAggregator instance;
+
+    private static class SenderState {
+        final User sender;
+        final List<NotificationCompat.MessagingStyle.Message> lines = new ArrayList<>();
+        int messageCount;
+        long lastDrawnAt;
+        boolean redrawScheduled;
+
+        SenderState(User sender) {
+            this.sender = sender;
+        }
+    }
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, SenderState> senders = new LinkedHashMap<>();
+    private final Person me;
+    private long summaryDrawnAt;
+    private boolean summaryScheduled;
+
+    private NotificationAggregator(Context context) {
+        this.context = context.getApplicationContext();
+        me = new Person.Builder().setName(this.context.getString(R.string.tu)).build();
+        // El canal se crea una sola vez por proceso
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Chat Message",
+                NotificationManager.IMPORTANCE_DEFAULT);
+        channel.setDescription("This notification channel is used for chat messages notification");
+        this.context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    public static synchronized NotificationAggregator getInstance(Context context) {
+        if (instance == null) {
+            instance = new NotificationAggregator(context);
+        }
+        return instance;
+    }
+
+    // Puede llamarse desde cualquier hilo; `messageCount` puede ser mayor que las líneas que se muestran
+    public void add(User sender, List<String> lines, int messageCount, long timestamp) {
+        handler.post(() -> {
+            SenderState state = senders.get(sender.id);
+            if (state == null) {
+                state = new SenderState(sender);
+                restoreLines(state);
+                senders.put(sender.id, state);
+            }
+            for (String line : lines) {
+                state.lines.add(new NotificationCompat.MessagingStyle.Message(line, timestamp, personOf(sender)));
+            }
+            state.messageCount += messageCount;
+            while (state.lines.size() > MAX_LINES_PER_SENDER) {
+                state.lines.remove(0);
+            }
+            scheduleRedraw(state);
+        });
+    }
+
+    // Al abrir el chat con el remitente, o al descartar su notificación, su estado deja de tener sentido
+    public void clear(String senderId) {
+        handler.post(() -> {
+            SenderState state = senders.remove(senderId);
+            NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+            notificationManager.cancel(notificationIdOf(senderId));
+            if (state != null) {
+                handler.removeCallbacksAndMessages(state);
+            }
+            if (senders.isEmpty()) {
+                notificationManager.cancel(SUMMARY_ID);
+            } else {
+                scheduleSummary();
+            }
+        });
+    }
+
+    // Descartar o tocar el resumen cierra todo el grupo
+    public void clearAll() {
+        handler.post(() -> {
+            NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+            for (SenderState state : senders.values()) {
+                handler.removeCallbacksAndMessages(state);
+                notificationManager.cancel(notificationIdOf(state.sender.id));
+            }
+            senders.clear();
+            notificationManager.cancel(SUMMARY_ID);
+        });
+    }
+
+    private void scheduleRedraw(SenderState state) {
+        if (state.redrawScheduled) {
+            return;
+        }
+        state.redrawScheduled = true;
+        long wait = Math.max(0, state.lastDrawnAt + MIN_REDRAW_INTERVAL_MS - SystemClock.uptimeMillis());
+        handler.postAtTime(() -> {
+            state.redrawScheduled = false;
+            state.lastDrawnAt = SystemClock.uptimeMillis();
+            draw(state);
+        }, state, SystemClock.uptimeMillis() + wait);
+        scheduleSummary();
+    }
+
+    private void scheduleSummary() {
+        if (summaryScheduled) {
+            return;
+        }
+        summaryScheduled = true;
+        long wait = Math.max(0, summaryDrawnAt + MIN_REDRAW_INTERVAL_MS - SystemClock.uptimeMillis());
+        handler.postDelayed(() -> {
+            summaryScheduled = false;
+            summaryDrawnAt = SystemClock.uptimeMillis();
+            drawSummary();
+        }, wait);
+    }
+
+    private void draw(SenderState state) {
+        NotificationCompat.MessagingStyle style = new NotificationCompat.MessagingStyle(me);
+        for (NotificationCompat.MessagingStyle.Message line : state.lines) {
+            style.addMessage(line);
+        }
+        Intent intent = new Intent(context, ChatActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        intent.putExtra(Constants.KEY_USER, state.sender);
+        int notificationId = notificationIdOf(state.sender.id);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, notificationId, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID);
+        builder.setSmallIcon(R.drawable.ic_notification);
+        builder.setStyle(style);
+        builder.setGroup(GROUP_KEY);
+        builder.setPriority(NotificationCompat.PRIORITY_DEFAULT);
+        builder.setContentIntent(pendingIntent);
+        builder.setDeleteIntent(dismissIntent(state.sender.id, notificationId));
+        Bundle extras = new Bundle();
+        extras.putInt(EXTRA_MESSAGE_COUNT, state.messageCount);
+        builder.addExtras(extras);
+        builder.setAutoCancel(true);
+        // Solo suena la primera vez; las actualizaciones de la misma conversación son silenciosas
+        builder.setOnlyAlertOnce(true);
+        notify(notificationId, builder.build());
+    }
+
+    private void drawSummary() {
+        if (senders.isEmpty()) {
+            return;
+        }
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        int messageCount = 0;
+        for (SenderState state : senders.values()) {
+            style.addLine(state.sender.name);
+            messageCount += state.messageCount;
+        }
+        String summary = context.getResources().getQuantityString(R.plurals.mensajes_nuevos, messageCount, messageCount);
+        style.setSummaryText(summary);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID);
+        builder.setSmallIcon(R.drawable.ic_notification);
+        builder.setContentTitle(summary);
+        builder.setStyle(style);
+        builder.setGroup(GROUP_KEY);
+        builder.setGroupSummary(true);
+        builder.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN);
+        // Tocar el resumen abre la lista de conversaciones, que se encarga de cerrar el grupo
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        intent.putExtra(Constants.KEY_FROM_NOTIFICATION_SUMMARY, true);
+        builder.setContentIntent(PendingIntent.getActivity(context, SUMMARY_ID, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        builder.setDeleteIntent(dismissIntent(null, SUMMARY_ID));
+        builder.setAutoCancel(true);
+        notify(SUMMARY_ID, builder.build());
+    }
+
+    // Un broadcast explícito: el receptor no es exportado y solo lo dispara el sistema en nombre de la app
+    private PendingIntent dismissIntent(String senderId, int requestCode) {
+        Intent intent = new Intent(context, NotificationDismissReceiver.class);
+        intent.putExtra(Constants.KEY_USER_ID, senderId);
+        return PendingIntent.getBroadcast(context, requestCode, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private void notify(int notificationId, Notification notification) {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        NotificationManagerCompat.from(context).notify(notificationId, notification);
+    }
+
+    // Si el proceso murió entre dos push, las líneas ya visibles se recuperan de la notificación activa
+    private void restoreLines(SenderState state) {
+        int notificationId = notificationIdOf(state.sender.id);
+        for (StatusBarNotification active : context.getSystemService(NotificationManager.class).getActiveNotifications()) {
+            if (active.getId() != notificationId) {
+                continue;
+            }
+            NotificationCompat.MessagingStyle style =
+                    NotificationCompat.MessagingStyle.extractMessagingStyleFromNotification(active.getNotification());
+            if (style != null) {
+                state.lines.addAll(style.getMessages());
+            }
+            state.messageCount = Math.max(state.lines.size(),
+                    active.getNotification().extras.getInt(EXTRA_MESSAGE_COUNT, 0));
+        }
+    }
+
+    // Id estable por remitente; el 0 queda reservado para el resumen
+    private static int notificationIdOf(String senderId) {
+        int id = senderId.hashCode();
+        return id == SUMMARY_ID ? 1 : id;
+    }
+
+    private static Person personOf(User sender) {
+        return new Person.Builder().setKey(sender.id).setName(sender.name).build();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.fbct2.firebase;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.example.fbct2.utilities.Constants;
+
+// El usuario descartó una notificación de mensajes: sin remitente, fue el resumen y con él todo el grupo
+public class NotificationDismissReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String senderId = intent.getStringExtra(Constants.KEY_USER_ID);
+        if (senderId != null) {
+            NotificationAggregator.getInstance(context).clear(senderId);
+        } else {
+            NotificationAggregator.getInstance(context).clearAll();
+        }
+    }
+}
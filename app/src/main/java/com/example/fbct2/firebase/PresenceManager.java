@@ -0,0 +1,131 @@
+package com.example.fbct2.firebase;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.ProcessLifecycleOwner;
+
+import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.PreferenceManager;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Presencia del usuario a nivel de proceso. Navegar entre pantallas no escribe nada: solo se escribe
+ * cuando la app pasa de verdad a primer o segundo plano, después de una ventana de espera que absorbe
+ * cambios rápidos. Mientras está en primer plano se renueva {@code lastSeen} cada cierto tiempo para que
+ * los demás puedan descartar una presencia que quedó colgada (proceso muerto, sin red).
+ * Todo va a {@code presence/{userId}}, un documento pequeño separado del perfil.
+ */
+public class PresenceManager implements DefaultLifecycleObserver {
+
+    private static final long DEBOUNCE_MS = 3_000;
+    private static final long HEARTBEAT_INTERVAL_MS = 60_000;
+    // Se toleran dos latidos perdidos antes de considerar al usuario desconectado
+    public static final long STALE_AFTER_MS = 2 * HEARTBEAT_INTERVAL_MS + DEBOUNCE_MS;
+
+    private static PresenceManager instance;
+
+    private final PreferenceManager preferenceManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable applyRunnable = this::apply;
+    private final Runnable heartbeatRunnable = this::heartbeat;
+    private boolean inForeground = false;
+    // Último estado escrito en esta sesión; null si todavía no se escribió ninguno
+    private Boolean writtenAvailable = null;
+
+    private PresenceManager(Context context) {
+        preferenceManager = new PreferenceManager(context.getApplicationContext());
+    }
+
+    public static synchronized PresenceManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new PresenceManager(context);
+        }
+        return instance;
+    }
+
+    // Se llama una sola vez desde la Application
+    public void start() {
+        ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
+    }
+
+    @Override
+    public void onStart(@NonNull LifecycleOwner owner) {
+        inForeground = true;
+        schedule();
+    }
+
+    @Override
+    public void onStop(@NonNull LifecycleOwner owner) {
+        inForeground = false;
+        schedule();
+    }
+
+    // Tras iniciar sesión el proceso ya está en primer plano, así que se publica el estado actual sin esperar
+    public void onSignedIn() {
+        writtenAvailable = null;
+        handler.removeCallbacks(applyRunnable);
+        handler.post(applyRunnable);
+    }
+
+    // El documento ya se marca como no disponible junto con el borrado del token; aquí solo se para todo
+    public void onSignedOut() {
+        handler.removeCallbacks(applyRunnable);
+        handler.removeCallbacks(heartbeatRunnable);
+        writtenAvailable = null;
+    }
+
+    public static DocumentReference presenceOf(String userId) {
+        return FirebaseFirestore.getInstance().collection(Constants.KEY_COLLECTION_PRESENCE).document(userId);
+    }
+
+    public static boolean isOnline(Long availability, Date lastSeen) {
+        return availability != null && availability == 1 && lastSeen != null
+                && System.currentTimeMillis() - lastSeen.getTime() < STALE_AFTER_MS;
+    }
+
+    private void schedule() {
+        handler.removeCallbacks(applyRunnable);
+        handler.postDelayed(applyRunnable, DEBOUNCE_MS);
+    }
+
+    private void apply() {
+        if (writtenAvailable != null && writtenAvailable == inForeground) {
+            return;
+        }
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        if (userId == null) {
+            return;
+        }
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_AVAILABILITY, inForeground ? 1 : 0);
+        updates.put(Constants.KEY_LAST_SEEN, FieldValue.serverTimestamp());
+        presenceOf(userId).set(updates, SetOptions.merge());
+        writtenAvailable = inForeground;
+        handler.removeCallbacks(heartbeatRunnable);
+        if (inForeground) {
+            handler.postDelayed(heartbeatRunnable, HEARTBEAT_INTERVAL_MS);
+        }
+    }
+
+    private void heartbeat() {
+        String userId = preferenceManager.getString(Constants.KEY_USER_ID);
+        if (!inForeground || userId == null) {
+            return;
+        }
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constants.KEY_LAST_SEEN, FieldValue.serverTimestamp());
+        presenceOf(userId).set(updates, SetOptions.merge());
+        handler.postDelayed(heartbeatRunnable, HEARTBEAT_INTERVAL_MS);
+    }
+}
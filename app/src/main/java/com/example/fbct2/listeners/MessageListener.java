@@ -0,0 +1,7 @@
+package com.example.fbct2.listeners;
+
+import com.example.fbct2.models.ChatMessage;
+
+public interface MessageListener {
+    void onMessageLongClicked(ChatMessage chatMessage);
+}
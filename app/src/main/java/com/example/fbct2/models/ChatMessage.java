@@ -1,10 +0,0 @@
-package com.example.fbct2.models;
-
-import java.util.Date;
-
-public class ChatMessage {
-    public String senderId, receiverId, message,dateTime;
-    public Date dateObject;
-    public String conversionId, conversionName, conversionImage;
-
-}
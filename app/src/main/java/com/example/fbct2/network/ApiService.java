@@ -0,0 +1,17 @@
+package com.example.fbct2.network;
+
+import java.util.HashMap;
+
+import retrofit2.Call;
+import retrofit2.http.Body;
+import retrofit2.http.HeaderMap;
+import retrofit2.http.POST;
+
+public interface ApiService {
+
+    @POST("messages:send")
+    Call<String> sendMessage(
+            @HeaderMap HashMap<String, String> headers,
+            @Body String messageBody
+    );
+}
@@ -0,0 +1,315 @@
+package com.example.fbct2.network;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.fbct2.database.ChatDatabase;
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.Metrics;
+import com.example.fbct2.utilities.Tracing;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Cola persistente de notificaciones push. Los mensajes a un mismo destinatario que llegan dentro de
+ * la ventana de agrupación salen en una sola petición; los fallos se reintentan con espera exponencial
+ * y la cola se retoma al iniciar la app si el proceso murió con envíos pendientes.
+ * El estado se toca solo desde el hilo de la cola.
+ */
+public class NotificationQueue {
+
+    private static final String TAG = "NotificationQueue";
+    private static final long COALESCE_WINDOW_MS = 1_500;
+    private static final long BACKOFF_BASE_MS = 2_000;
+    private static final long BACKOFF_MAX_MS = 10 * 60 * 1000;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final int MAX_IN_FLIGHT = 2;
+    // En la notificación solo se muestran las últimas líneas agrupadas
+    private static final int MAX_COALESCED_LINES = 5;
+    // Los datos de un push no pueden pasar de 4 KB
+    private static final int MAX_PAYLOAD_MESSAGE_LENGTH = 500;
+    // Ida y vuelta de cada petición a FCM, incluidas las que fallan
+    private static final Metrics.Histogram SEND_TIME = Metrics.getInstance().histogram("notification.send");
+    private static final Metrics.Counter SENT = Metrics.getInstance().counter("notification.sent");
+    private static final Metrics.Counter RETRIED = Metrics.getInstance().counter("notification.retried");
+    private static final Metrics.Counter DROPPED = Metrics.getInstance().counter("notification.dropped");
+
+    private static NotificationQueue instance;
+
+    private final ChatDatabase chatDatabase;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Random random = new Random();
+    private ApiService apiService;
+    private ScheduledFuture<?> scheduledDrain;
+    private int inFlight = 0;
+    // Peticiones en vuelo por id de fila, para cancelarlas al cerrar sesión
+    private final Map<Long, Call<String>> calls = new HashMap<>();
+
+    private NotificationQueue(Context context) {
+        chatDatabase = ChatDatabase.getInstance(context);
+    }
+
+    public static synchronized NotificationQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new NotificationQueue(context);
+        }
+        return instance;
+    }
+
+    // Lo que quedó marcado como en vuelo cuando murió el proceso nunca recibió respuesta: se vuelve a enviar
+    public void resume() {
+        executor.execute(() -> {
+            ContentValues values = new ContentValues();
+            values.put(ChatDatabase.COLUMN_IN_FLIGHT, 0);
+            chatDatabase.getWritableDatabase().update(ChatDatabase.TABLE_OUTBOX, values,
+                    ChatDatabase.COLUMN_IN_FLIGHT + " = 1", null);
+            drain();
+        });
+    }
+
+    /**
+     * Al cerrar sesión: lo encolado lleva el nombre, el id y el token del usuario anterior y no debe salir
+     * con la cuenta siguiente. Se descarta la cola, la próxima pasada y lo que esté en vuelo.
+     */
+    public void clear() {
+        executor.execute(() -> {
+            if (scheduledDrain != null) {
+                scheduledDrain.cancel(false);
+                scheduledDrain = null;
+            }
+            for (Call<String> call : new ArrayList<>(calls.values())) {
+                call.cancel();
+            }
+            chatDatabase.getWritableDatabase().delete(ChatDatabase.TABLE_OUTBOX, null, null);
+        });
+    }
+
+    public void enqueue(ChatMessage chatMessage, String receiverToken, String senderName, String senderToken) {
+        if (receiverToken == null) {
+            return;
+        }
+        String receiverId = chatMessage.receiverId;
+        String message = chatMessage.message;
+        executor.execute(() -> {
+            SQLiteDatabase db = chatDatabase.getWritableDatabase();
+            // Si hay una notificación esperando para el mismo destinatario, el mensaje se suma a ella
+            try (Cursor cursor = db.query(ChatDatabase.TABLE_OUTBOX,
+                    new String[]{ChatDatabase.COLUMN_ID, ChatDatabase.COLUMN_MESSAGE, ChatDatabase.COLUMN_MESSAGE_COUNT,
+                            ChatDatabase.COLUMN_PAYLOAD},
+                    ChatDatabase.COLUMN_RECEIVER_ID + " = ? AND " + ChatDatabase.COLUMN_IN_FLIGHT + " = 0",
+                    new String[]{receiverId}, null, null, ChatDatabase.COLUMN_ID + " DESC", "1")) {
+                if (cursor.moveToFirst()) {
+                    ContentValues values = new ContentValues();
+                    values.put(ChatDatabase.COLUMN_RECEIVER_TOKEN, receiverToken);
+                    values.put(ChatDatabase.COLUMN_MESSAGE, appendLine(cursor.getString(1), message));
+                    values.put(ChatDatabase.COLUMN_MESSAGE_COUNT, cursor.getInt(2) + 1);
+                    values.put(ChatDatabase.COLUMN_PAYLOAD, appendPayload(cursor.getString(3), chatMessage));
+                    db.update(ChatDatabase.TABLE_OUTBOX, values, ChatDatabase.COLUMN_ID + " = ?",
+                            new String[]{String.valueOf(cursor.getLong(0))});
+                    return;
+                }
+            }
+            ContentValues values = new ContentValues();
+            values.put(ChatDatabase.COLUMN_RECEIVER_ID, receiverId);
+            values.put(ChatDatabase.COLUMN_RECEIVER_TOKEN, receiverToken);
+            values.put(ChatDatabase.COLUMN_SENDER_ID, chatMessage.senderId);
+            values.put(ChatDatabase.COLUMN_SENDER_NAME, senderName);
+            values.put(ChatDatabase.COLUMN_SENDER_TOKEN, senderToken);
+            values.put(ChatDatabase.COLUMN_MESSAGE, message);
+            values.put(ChatDatabase.COLUMN_PAYLOAD, appendPayload(null, chatMessage));
+            values.put(ChatDatabase.COLUMN_NEXT_ATTEMPT_AT, System.currentTimeMillis() + COALESCE_WINDOW_MS);
+            db.insert(ChatDatabase.TABLE_OUTBOX, null, values);
+            drain();
+        });
+    }
+
+    private static String appendLine(String current, String line) {
+        String[] lines = (current + "\n" + line).split("\n");
+        int from = Math.max(0, lines.length - MAX_COALESCED_LINES);
+        StringBuilder builder = new StringBuilder();
+        for (int i = from; i < lines.length; i++) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(lines[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * El receptor guarda estos mensajes en su almacén local para que el chat abierto desde la notificación
+     * se pinte sin esperar a Firestore. Los mensajes demasiado largos para el límite de un push se omiten:
+     * llegarán con la sincronización normal.
+     */
+    private static String appendPayload(String current, ChatMessage chatMessage) {
+        JSONArray messages;
+        try {
+            messages = current != null ? new JSONArray(current) : new JSONArray();
+            if (chatMessage.message.length() <= MAX_PAYLOAD_MESSAGE_LENGTH) {
+                JSONObject entry = new JSONObject();
+                entry.put(Constants.KEY_MESSAGE_ID, chatMessage.id);
+                entry.put(Constants.KEY_MESSAGE, chatMessage.message);
+                entry.put(Constants.KEY_TIMESTAMP, chatMessage.dateObject.getTime());
+                messages.put(entry);
+            }
+            while (messages.length() > MAX_COALESCED_LINES) {
+                messages.remove(0);
+            }
+        } catch (JSONException e) {
+            messages = new JSONArray();
+        }
+        return messages.toString();
+    }
+
+    // Envía lo que ya venció respetando el tope de peticiones simultáneas y programa la siguiente pasada
+    private void drain() {
+        if (scheduledDrain != null) {
+            scheduledDrain.cancel(false);
+            scheduledDrain = null;
+        }
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = chatDatabase.getWritableDatabase();
+        List<ContentValues> due = new ArrayList<>();
+        if (inFlight < MAX_IN_FLIGHT) {
+            try (Cursor cursor = db.query(ChatDatabase.TABLE_OUTBOX, null,
+                    ChatDatabase.COLUMN_IN_FLIGHT + " = 0 AND " + ChatDatabase.COLUMN_NEXT_ATTEMPT_AT + " <= ?",
+                    new String[]{String.valueOf(now)}, null, null, ChatDatabase.COLUMN_NEXT_ATTEMPT_AT,
+                    String.valueOf(MAX_IN_FLIGHT - inFlight))) {
+                while (cursor.moveToNext()) {
+                    ContentValues row = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(cursor, row);
+                    due.add(row);
+                }
+            }
+        }
+        for (ContentValues row : due) {
+            send(row);
+        }
+        try (Cursor cursor = db.query(ChatDatabase.TABLE_OUTBOX,
+                new String[]{"MIN(" + ChatDatabase.COLUMN_NEXT_ATTEMPT_AT + ")"},
+                ChatDatabase.COLUMN_IN_FLIGHT + " = 0", null, null, null, null)) {
+            if (inFlight < MAX_IN_FLIGHT && cursor.moveToFirst() && !cursor.isNull(0)) {
+                long delay = Math.max(cursor.getLong(0) - now, 0);
+                scheduledDrain = executor.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void send(ContentValues row) {
+        long id = row.getAsLong(ChatDatabase.COLUMN_ID);
+        String body;
+        try {
+            body = buildBody(row);
+        } catch (JSONException e) {
+            delete(id);
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(ChatDatabase.COLUMN_IN_FLIGHT, 1);
+        chatDatabase.getWritableDatabase().update(ChatDatabase.TABLE_OUTBOX, values,
+                ChatDatabase.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        inFlight++;
+        int attempts = row.getAsInteger(ChatDatabase.COLUMN_ATTEMPTS);
+        int cookie = (int) id;
+        long start = Tracing.beginAsync("NotificationQueue.send", cookie);
+        Call<String> call = getApiService().sendMessage(Constants.getRemoteMsgHeaders(), body);
+        calls.put(id, call);
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(@NonNull Call<String> call, @NonNull Response<String> response) {
+                Tracing.endAsync("NotificationQueue.send", cookie, SEND_TIME, start);
+                boolean retry = response.code() == 429 || response.code() >= 500;
+                executor.execute(() -> finish(id, attempts, !response.isSuccessful() && retry,
+                        response.isSuccessful() ? null : "HTTP " + response.code()));
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<String> call, @NonNull Throwable t) {
+                Tracing.endAsync("NotificationQueue.send", cookie, SEND_TIME, start);
+                executor.execute(() -> finish(id, attempts, true, t.getMessage()));
+            }
+        });
+    }
+
+    // Si clear() ya vació la cola, la fila no existe y ni el reintento ni el borrado hacen nada
+    private void finish(long id, int attempts, boolean retry, String error) {
+        inFlight--;
+        calls.remove(id);
+        if (retry && attempts + 1 < MAX_ATTEMPTS) {
+            RETRIED.increment();
+            // Espera exponencial con jitter para que varios clientes no reintenten a la vez
+            long backoff = Math.min(BACKOFF_BASE_MS << attempts, BACKOFF_MAX_MS);
+            long delay = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+            ContentValues values = new ContentValues();
+            values.put(ChatDatabase.COLUMN_IN_FLIGHT, 0);
+            values.put(ChatDatabase.COLUMN_ATTEMPTS, attempts + 1);
+            values.put(ChatDatabase.COLUMN_NEXT_ATTEMPT_AT, System.currentTimeMillis() + delay);
+            chatDatabase.getWritableDatabase().update(ChatDatabase.TABLE_OUTBOX, values,
+                    ChatDatabase.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        } else {
+            if (error != null) {
+                DROPPED.increment();
+                Log.w(TAG, "Notification dropped after " + (attempts + 1) + " attempts: " + error);
+            } else {
+                SENT.increment();
+            }
+            delete(id);
+        }
+        drain();
+    }
+
+    private void delete(long id) {
+        chatDatabase.getWritableDatabase().delete(ChatDatabase.TABLE_OUTBOX,
+                ChatDatabase.COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+    }
+
+    private ApiService getApiService() {
+        if (apiService == null) {
+            apiService = ApiClient.getClient().create(ApiService.class);
+        }
+        return apiService;
+    }
+
+    private static String buildBody(ContentValues row) throws JSONException {
+        JSONArray tokens = new JSONArray();
+        tokens.put(row.getAsString(ChatDatabase.COLUMN_RECEIVER_TOKEN));
+
+        JSONObject data = new JSONObject();
+        data.put(Constants.KEY_USER_ID, row.getAsString(ChatDatabase.COLUMN_SENDER_ID));
+        data.put(Constants.KEY_NAME, row.getAsString(ChatDatabase.COLUMN_SENDER_NAME));
+        data.put(Constants.KEY_FCM_TOKEN, row.getAsString(ChatDatabase.COLUMN_SENDER_TOKEN));
+        data.put(Constants.KEY_MESSAGE, row.getAsString(ChatDatabase.COLUMN_MESSAGE));
+        data.put(Constants.KEY_MESSAGE_COUNT, row.getAsString(ChatDatabase.COLUMN_MESSAGE_COUNT));
+        if (row.getAsString(ChatDatabase.COLUMN_PAYLOAD) != null) {
+            data.put(Constants.KEY_MESSAGES, row.getAsString(ChatDatabase.COLUMN_PAYLOAD));
+        }
+
+        JSONObject body = new JSONObject();
+        body.put(Constants.REMOTE_MSG_DATA, data);
+        body.put(Constants.REMOTE_MSG_REGISTRATION_IDS, tokens);
+        return body.toString();
+    }
+}
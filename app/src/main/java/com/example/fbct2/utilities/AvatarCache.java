@@ -0,0 +1,59 @@
+package com.example.fbct2.utilities;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+// Cache LRU de avatares decodificados compartido por toda la app, limitado por memoria
+public class AvatarCache {
+
+    private static AvatarCache instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+
+    private AvatarCache() {
+        // Un octavo de la memoria disponible para la app, medido en KB
+        int cacheSize = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        memoryCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    public static synchronized AvatarCache getInstance() {
+        if (instance == null) {
+            instance = new AvatarCache();
+        }
+        return instance;
+    }
+
+    // La clave combina el hash del contenido (el id en AvatarStore) con el tamaño al que se decodificó
+    public static String keyOf(String imageId, int size) {
+        return imageId + "@" + size;
+    }
+
+    public Bitmap get(String key) {
+        return memoryCache.get(key);
+    }
+
+    public void put(String key, Bitmap bitmap) {
+        memoryCache.put(key, bitmap);
+    }
+
+    public int hitCount() {
+        return memoryCache.hitCount();
+    }
+
+    public int missCount() {
+        return memoryCache.missCount();
+    }
+
+    public int evictionCount() {
+        return memoryCache.evictionCount();
+    }
+
+    public String stats() {
+        return memoryCache.toString();
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.fbct2.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Segundo nivel de cache: miniaturas de avatares ya reducidas, guardadas en disco y limitadas
+ * por bytes. El orden LRU se reconstruye al arrancar a partir de un journal de operaciones.
+ */
+public class AvatarDiskCache {
+
+    private static final String TAG = "AvatarDiskCache";
+    private static final String DIRECTORY = "avatars";
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String PUT = "PUT";
+    private static final String GET = "GET";
+    private static final String DELETE = "DEL";
+    private static final long MAX_BYTES = 10L * 1024 * 1024;
+    private static final int COMPACT_THRESHOLD = 2000;
+
+    private static AvatarDiskCache instance;
+
+    private final File directory;
+    // En orden de acceso: el primero es el menos usado recientemente
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private BufferedWriter journalWriter;
+    private boolean opened;
+    private long totalBytes;
+    private int journalLines;
+
+    private AvatarDiskCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized AvatarDiskCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarDiskCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY));
+        }
+        return instance;
+    }
+
+    // Solo el índice va bajo el lock; decodificar no bloquea a otros hilos que leen o escriben avatares
+    public Bitmap get(String key) {
+        Long size;
+        synchronized (this) {
+            open();
+            size = entries.get(key);
+            if (size == null) {
+                return null;
+            }
+            // Un GET perdido solo desordena el LRU, así que no se fuerza a disco en cada acierto
+            appendJournal(GET, key, 0, false);
+        }
+        // put() reemplaza el archivo con un rename, así que nunca se lee a medio escribir
+        Bitmap bitmap = BitmapFactory.decodeFile(fileFor(key).getPath());
+        if (bitmap == null) {
+            discard(key, size);
+        }
+        return bitmap;
+    }
+
+    public synchronized void put(String key, Bitmap bitmap) {
+        open();
+        File tmp = new File(directory, fileNameFor(key) + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, 90, outputStream);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + key, e);
+            tmp.delete();
+            return;
+        }
+        File file = fileFor(key);
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        Long previous = entries.put(key, file.length());
+        totalBytes += file.length() - (previous != null ? previous : 0);
+        appendJournal(PUT, key, file.length(), true);
+        trimToSize();
+    }
+
+    // Un archivo ilegible se descarta, salvo que mientras tanto un put() lo haya reemplazado
+    private synchronized void discard(String key, long size) {
+        Long current = entries.get(key);
+        if (current != null && current == size) {
+            entries.remove(key);
+            totalBytes -= size;
+            fileFor(key).delete();
+            appendJournal(DELETE, key, 0, true);
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            fileFor(eldest.getKey()).delete();
+            appendJournal(DELETE, eldest.getKey(), 0, true);
+        }
+        if (journalLines > COMPACT_THRESHOLD && journalLines > entries.size() * 2) {
+            compactJournal();
+        }
+    }
+
+    // Se abre de forma perezosa para no leer el journal en el hilo principal
+    private void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        directory.mkdirs();
+        File journal = new File(directory, JOURNAL);
+        if (journal.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(journal))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replay(line);
+                    journalLines++;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Corrupt journal, starting empty", e);
+                entries.clear();
+            }
+        }
+        // Descarta entradas cuyo archivo ya no existe (por ejemplo si el sistema limpió el cache)
+        totalBytes = 0;
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (fileFor(entry.getKey()).exists()) {
+                totalBytes += entry.getValue();
+            } else {
+                iterator.remove();
+            }
+        }
+        compactJournal();
+    }
+
+    private void replay(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            return;
+        }
+        switch (parts[0]) {
+            case PUT:
+                if (parts.length != 3) {
+                    break;
+                }
+                try {
+                    entries.put(parts[1], Long.parseLong(parts[2]));
+                } catch (NumberFormatException e) {
+                    // Línea cortada por un cierre a mitad de escritura: se ignora y la entrada se descarta
+                    entries.remove(parts[1]);
+                }
+                break;
+            case GET:
+                entries.get(parts[1]);
+                break;
+            case DELETE:
+                entries.remove(parts[1]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Reescribe el journal con una línea PUT por entrada, en orden LRU
+    private void compactJournal() {
+        closeJournal();
+        File tmp = new File(directory, JOURNAL_TMP);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmp))) {
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(PUT + " " + entry.getKey() + " " + entry.getValue());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to compact journal", e);
+        }
+        File journal = new File(directory, JOURNAL);
+        if (!tmp.renameTo(journal)) {
+            Log.w(TAG, "Unable to replace journal");
+        }
+        journalLines = entries.size();
+        try {
+            journalWriter = new BufferedWriter(new FileWriter(journal, true));
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to open journal", e);
+        }
+    }
+
+    private void appendJournal(String operation, String key, long size, boolean flush) {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.write(operation.equals(PUT) ? operation + " " + key + " " + size : operation + " " + key);
+            journalWriter.newLine();
+            if (flush) {
+                journalWriter.flush();
+            }
+            journalLines++;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to append to journal", e);
+        }
+    }
+
+    private void closeJournal() {
+        if (journalWriter != null) {
+            try {
+                journalWriter.close();
+            } catch (IOException ignored) {
+            }
+            journalWriter = null;
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, fileNameFor(key));
+    }
+
+    private static String fileNameFor(String key) {
+        return key.replace('@', '_') + ".webp";
+    }
+}
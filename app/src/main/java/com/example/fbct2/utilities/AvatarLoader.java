@@ -0,0 +1,245 @@
+package com.example.fbct2.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.example.fbct2.R;
+import com.example.fbct2.firebase.FirestoreAvatarStore;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Decodifica avatares en segundo plano, ya reducidos al tamaño del ImageView que los muestra.
+// Busca primero en memoria, luego en disco y solo al final trae y decodifica el Base64.
+// Las descargas van por su propio pool: una red lenta no frena los aciertos de disco de las demás filas.
+public class AvatarLoader {
+
+    public interface Callback {
+        void onAvatarLoaded(Bitmap bitmap);
+    }
+
+    // Los avatares se guardan con 150px de ancho (ver SingUpActivity.encodeImage)
+    private static final int DEFAULT_SIZE = 150;
+    private static final Metrics.Histogram DECODE_TIME = Metrics.getInstance().histogram("avatar.decode");
+    private static final Metrics.Counter MEMORY_HITS = Metrics.getInstance().counter("avatar.cache.memory");
+    private static final Metrics.Counter DISK_HITS = Metrics.getInstance().counter("avatar.cache.disk");
+    private static final Metrics.Counter FETCHES = Metrics.getInstance().counter("avatar.fetch");
+
+    private static AvatarLoader instance;
+
+    private final AvatarDiskCache diskCache;
+    private AvatarStore avatarStore;
+    // Disco, hash y decodificación
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    // AvatarStore.fetch bloquea hasta su timeout
+    private final ExecutorService fetchExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private static class Request {
+        volatile boolean cancelled;
+        volatile Future<?> future;
+    }
+
+    private AvatarLoader(Context context) {
+        diskCache = AvatarDiskCache.getInstance(context);
+    }
+
+    public static synchronized AvatarLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Permite reemplazar el almacén remoto, por ejemplo con InMemoryAvatarStore en pruebas
+    public synchronized void setAvatarStore(AvatarStore avatarStore) {
+        this.avatarStore = avatarStore;
+    }
+
+    private synchronized AvatarStore getAvatarStore() {
+        if (avatarStore == null) {
+            avatarStore = new FirestoreAvatarStore(FirebaseFirestore.getInstance());
+        }
+        return avatarStore;
+    }
+
+    /**
+     * Carga un avatar por su id en el AvatarStore. Los documentos antiguos traen el Base64 en
+     * línea; en ese caso se usa encodedImage y el id se calcula a partir del contenido, ya en
+     * segundo plano.
+     */
+    public void load(String imageId, String encodedImage, ImageView target) {
+        cancel(target);
+        if (isEmpty(imageId) && isEmpty(encodedImage)) {
+            target.setImageResource(android.R.color.transparent);
+            return;
+        }
+        int size = targetSize(target);
+        Bitmap cached = isEmpty(imageId) ? null : AvatarCache.getInstance().get(AvatarCache.keyOf(imageId, size));
+        if (cached != null) {
+            MEMORY_HITS.increment();
+            target.setImageBitmap(cached);
+            return;
+        }
+        target.setImageResource(android.R.color.transparent);
+        Request request = new Request();
+        target.setTag(R.id.avatar_request, request);
+        start(request, imageId, encodedImage, size, bitmap -> {
+            // Solo se publica si el ImageView sigue esperando este mismo avatar
+            if (target.getTag(R.id.avatar_request) == request) {
+                target.setTag(R.id.avatar_request, null);
+                target.setImageBitmap(bitmap);
+            }
+        });
+    }
+
+    public void load(String imageId, String encodedImage, int size, Callback callback) {
+        if (isEmpty(imageId) && isEmpty(encodedImage)) {
+            callback.onAvatarLoaded(null);
+            return;
+        }
+        Bitmap cached = isEmpty(imageId) ? null : AvatarCache.getInstance().get(AvatarCache.keyOf(imageId, size));
+        if (cached != null) {
+            MEMORY_HITS.increment();
+            callback.onAvatarLoaded(cached);
+            return;
+        }
+        start(new Request(), imageId, encodedImage, size, callback);
+    }
+
+    /**
+     * Sube un avatar en línea a `avatars` y entrega su id en el hilo principal. El hash recorre todo
+     * el Base64, así que se calcula en segundo plano; quien llama guarda el id para no repetirlo.
+     */
+    public void upload(String encodedImage, ChatBackend.Callback<String> callback) {
+        executor.execute(() -> {
+            String imageId = getAvatarStore().put(encodedImage);
+            mainHandler.post(() -> callback.onResult(imageId));
+        });
+    }
+
+    // Se llama cuando el ViewHolder se recicla para no decodificar algo que ya no se va a ver
+    public void cancel(ImageView target) {
+        Object tag = target.getTag(R.id.avatar_request);
+        if (tag instanceof Request) {
+            Request request = (Request) tag;
+            request.cancelled = true;
+            if (request.future != null) {
+                request.future.cancel(false);
+            }
+            target.setTag(R.id.avatar_request, null);
+        }
+    }
+
+    // Memoria y disco en el pool local; si hay que traer el Base64, la descarga pasa a fetchExecutor
+    // y la decodificación vuelve al pool local
+    private void start(Request request, String imageId, String encodedImage, int size, Callback callback) {
+        request.future = executor.submit(() -> {
+            if (request.cancelled) {
+                return;
+            }
+            String hash = isEmpty(imageId) ? AvatarHash.of(encodedImage) : imageId;
+            String key = AvatarCache.keyOf(hash, size);
+            Bitmap bitmap = readCached(key);
+            if (bitmap == null && !isEmpty(encodedImage)) {
+                bitmap = decode(encodedImage, size, key);
+            }
+            if (bitmap != null || !isEmpty(encodedImage)) {
+                deliver(request, bitmap, callback);
+                return;
+            }
+            fetchExecutor.execute(() -> {
+                if (request.cancelled) {
+                    return;
+                }
+                FETCHES.increment();
+                String fetched = getAvatarStore().fetch(hash);
+                if (fetched == null) {
+                    deliver(request, null, callback);
+                    return;
+                }
+                executor.execute(() -> {
+                    if (!request.cancelled) {
+                        deliver(request, decode(fetched, size, key), callback);
+                    }
+                });
+            });
+        });
+    }
+
+    private void deliver(Request request, Bitmap bitmap, Callback callback) {
+        mainHandler.post(() -> {
+            if (!request.cancelled) {
+                callback.onAvatarLoaded(bitmap);
+            }
+        });
+    }
+
+    private Bitmap readCached(String key) {
+        Bitmap bitmap = AvatarCache.getInstance().get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        bitmap = diskCache.get(key);
+        if (bitmap != null) {
+            DISK_HITS.increment();
+            AvatarCache.getInstance().put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    // Un Base64 corrupto queda como imagen vacía: la excepción no debe escapar del hilo del pool
+    private Bitmap decode(String encodedImage, int size, String key) {
+        Bitmap bitmap;
+        long start = Tracing.begin("AvatarLoader.decode");
+        try {
+            byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
+            bitmap = decodeSampled(bytes, size);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            Tracing.end(DECODE_TIME, start);
+        }
+        if (bitmap != null) {
+            AvatarCache.getInstance().put(key, bitmap);
+            diskCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    // Primero se leen solo las dimensiones y luego se decodifica con el inSampleSize adecuado
+    static Bitmap decodeSampled(byte[] bytes, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        int sampleSize = 1;
+        int smallestSide = Math.min(options.outWidth, options.outHeight);
+        while (smallestSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static int targetSize(ImageView target) {
+        int size = Math.max(target.getWidth(), target.getHeight());
+        ViewGroup.LayoutParams layoutParams = target.getLayoutParams();
+        if (size <= 0 && layoutParams != null) {
+            size = Math.max(layoutParams.width, layoutParams.height);
+        }
+        return size > 0 ? size : DEFAULT_SIZE;
+    }
+}
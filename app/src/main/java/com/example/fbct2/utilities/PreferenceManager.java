@@ -3,33 +3,49 @@ package com.example.fbct2.utilities;
 import android.content.Context;
 import android.content.SharedPreferences;
 
-public class PreferenceManager {
+public class PreferenceManager implements KeyValueStore {
     private final SharedPreferences sharedPreferences;
 
     public PreferenceManager(Context context) {
         sharedPreferences = context.getSharedPreferences(Constants.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
     }
 
+    @Override
     public void putBoolean(String key, boolean value) {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.putBoolean(key, value);
         editor.apply();
     }
 
+    @Override
     public Boolean getBoolean(String key) {
         return sharedPreferences.getBoolean(key, false);
     }
 
+    @Override
     public void putString(String key, String value) {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.putString(key, value);
         editor.apply();
     }
 
+    @Override
     public String getString(String key) {
         return sharedPreferences.getString(key, null);
     }
 
+    @Override
+    public void putLong(String key, long value) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putLong(key, value);
+        editor.apply();
+    }
+
+    @Override
+    public long getLong(String key) {
+        return sharedPreferences.getLong(key, 0L);
+    }
+
     public void clear() {
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.clear();
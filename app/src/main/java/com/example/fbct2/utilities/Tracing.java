@@ -0,0 +1,35 @@
+package com.example.fbct2.utilities;
+
+import android.os.Trace;
+
+/**
+ * Une una sección de android.os.Trace con un histograma de Metrics. Las secciones se ven en Perfetto también
+ * en builds de producción (la app es profileable) y el histograma queda en la pantalla de métricas.
+ * begin() y end() deben llamarse en el mismo hilo; para idas y vueltas asíncronas se usa beginAsync().
+ */
+public final class Tracing {
+
+    private Tracing() {
+    }
+
+    public static long begin(String section) {
+        Trace.beginSection(section);
+        return System.nanoTime();
+    }
+
+    public static void end(Metrics.Histogram histogram, long start) {
+        histogram.record(System.nanoTime() - start);
+        Trace.endSection();
+    }
+
+    // El cookie distingue idas y vueltas simultáneas con el mismo nombre
+    public static long beginAsync(String section, int cookie) {
+        Trace.beginAsyncSection(section, cookie);
+        return System.nanoTime();
+    }
+
+    public static void endAsync(String section, int cookie, Metrics.Histogram histogram, long start) {
+        histogram.record(System.nanoTime() - start);
+        Trace.endAsyncSection(section, cookie);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.fbct2.benchmarks;
+
+import com.example.fbct2.utilities.AvatarHash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Hash de un avatar en Base64 según su tamaño en bytes de imagen
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AvatarHashBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int imageBytes;
+
+    private String encodedImage;
+
+    @Setup
+    public void setUp() {
+        byte[] image = new byte[imageBytes];
+        new Random(42).nextBytes(image);
+        encodedImage = Base64.getMimeEncoder().encodeToString(image);
+    }
+
+    @Benchmark
+    public String hash() {
+        return AvatarHash.of(encodedImage);
+    }
+}
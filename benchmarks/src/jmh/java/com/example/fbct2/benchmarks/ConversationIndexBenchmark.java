@@ -0,0 +1,55 @@
+package com.example.fbct2.benchmarks;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.ConversationIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cada mensaje nuevo sube su conversación al principio de la lista de recientes, como en MainActivity
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversationIndexBenchmark {
+
+    private static final int CONVERSATIONS = 500;
+
+    @Param({"1000", "10000", "100000"})
+    public int messages;
+
+    private List<ChatMessage> updates;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        updates = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            ChatMessage conversation = new ChatMessage();
+            conversation.conversionId = "c" + random.nextInt(CONVERSATIONS);
+            conversation.message = "mensaje " + i;
+            conversation.dateObject = new Date(Messages.START + i * 1_000L);
+            updates.add(conversation);
+        }
+    }
+
+    @Benchmark
+    public List<ChatMessage> upsertAll() {
+        ConversationIndex index = new ConversationIndex();
+        for (ChatMessage conversation : updates) {
+            index.upsert(conversation);
+        }
+        return index.snapshot();
+    }
+}
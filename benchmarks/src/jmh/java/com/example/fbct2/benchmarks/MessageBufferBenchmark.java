@@ -0,0 +1,81 @@
+package com.example.fbct2.benchmarks;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.MessageBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Los tres caminos de MessageBuffer que corren en el hilo principal: la página que llega en orden,
+ * la mezcla de un lote intercalado con lo ya cargado y la búsqueda de un mensaje por id y fecha.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageBufferBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int messages;
+
+    private List<ChatMessage> ordered;
+    private List<ChatMessage> evens;
+    private List<ChatMessage> odds;
+    private MessageBuffer loaded;
+    private ChatMessage[] lookups;
+    private int nextLookup;
+
+    @Setup
+    public void setUp() {
+        ordered = Messages.ordered(messages);
+        evens = new ArrayList<>();
+        odds = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            (i % 2 == 0 ? evens : odds).add(ordered.get(i));
+        }
+        Collections.shuffle(odds, new Random(42));
+        loaded = new MessageBuffer();
+        loaded.insertAll(ordered, (position, count) -> { });
+        Random random = new Random(7);
+        lookups = new ChatMessage[1024];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = ordered.get(random.nextInt(ordered.size()));
+        }
+    }
+
+    @Benchmark
+    public MessageBuffer appendInOrder() {
+        MessageBuffer buffer = new MessageBuffer();
+        buffer.insertAll(ordered, (position, count) -> { });
+        return buffer;
+    }
+
+    // Peor caso de insertAll: cada mensaje del lote cae entre dos ya cargados
+    @Benchmark
+    public MessageBuffer mergeInterleaved(Blackhole blackhole) {
+        MessageBuffer buffer = new MessageBuffer();
+        buffer.insertAll(evens, (position, count) -> { });
+        buffer.insertAll(odds, (position, count) -> blackhole.consume(position));
+        return buffer;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int indexOf() {
+        ChatMessage chatMessage = lookups[nextLookup++ & (lookups.length - 1)];
+        return loaded.indexOf(chatMessage.id, chatMessage.dateObject);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.fbct2.benchmarks;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Datos de prueba deterministas: mismas entradas en cada fork
+final class Messages {
+
+    static final long START = 1_700_000_000_000L;
+
+    private Messages() {
+    }
+
+    // Un mensaje por segundo entre dos usuarios, en orden ascendente
+    static List<ChatMessage> ordered(int count) {
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.id = "m" + i;
+            chatMessage.senderId = i % 2 == 0 ? "alice" : "bob";
+            chatMessage.receiverId = i % 2 == 0 ? "bob" : "alice";
+            chatMessage.message = "mensaje " + i;
+            chatMessage.dateObject = new Date(START + i * 1_000L);
+            messages.add(chatMessage);
+        }
+        return messages;
+    }
+}
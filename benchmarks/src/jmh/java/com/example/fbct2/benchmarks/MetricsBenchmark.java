@@ -0,0 +1,42 @@
+package com.example.fbct2.benchmarks;
+
+import com.example.fbct2.utilities.Metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+// Costo de registrar una duración en los caminos calientes; con -prof gc debe dar 0 B/op
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+
+    private final Metrics.Histogram histogram = new Metrics.Histogram();
+    private final Metrics.Counter counter = new Metrics.Counter();
+    private long value = 1;
+
+    @Benchmark
+    public void record() {
+        // Valores distintos en cada llamada para recorrer varias cubetas
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record((value >>> 40) & 0xFFFFFF);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.record(System.nanoTime() & 0xFFFFFF);
+    }
+
+    @Benchmark
+    public void increment() {
+        counter.increment();
+    }
+}
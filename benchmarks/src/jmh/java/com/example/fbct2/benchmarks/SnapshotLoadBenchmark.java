@@ -0,0 +1,113 @@
+package com.example.fbct2.benchmarks;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.InMemoryChatBackend;
+import com.example.fbct2.utilities.LoadGenerator;
+import com.example.fbct2.utilities.MessageBuffer;
+import com.example.fbct2.utilities.MessageChange;
+import com.example.fbct2.utilities.MessageChanges;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Muchos contactos escribiendo en ráfagas sobre InMemoryChatBackend. Los snapshots se generan una sola
+ * vez antes de medir, así el fan-out y las copias del backend quedan fuera: el tiempo medido es solo el
+ * trabajo de ChatActivity en el hilo principal, separar cada snapshot en deltas y aplicarlos al
+ * MessageBuffer de su conversación.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotLoadBenchmark {
+
+    // Ráfagas por invocación: lo bastante largo para que rearmar los buffers entre invocaciones no pese
+    private static final int SNAPSHOTS = 1000;
+
+    @Param({"1000", "10000", "100000"})
+    public int messages;
+
+    @Param({"10", "100"})
+    public int peers;
+
+    @Param({"1", "20"})
+    public int burstSize;
+
+    // Lo que el listener de cada conversación entregó al abrirse
+    private final Map<String, List<ChatMessage>> history = new HashMap<>();
+    private final List<String> snapshotKeys = new ArrayList<>();
+    private final List<List<MessageChange>> snapshots = new ArrayList<>();
+    private final Map<String, MessageBuffer> buffers = new HashMap<>();
+    private boolean recording;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        LoadGenerator generator = new LoadGenerator(backend, "me", peers, 42, backend::now);
+        // Historial previo repartido entre los contactos antes de abrir los listeners
+        generator.run(messages / burstSize, burstSize);
+        for (String peerId : generator.peerIds()) {
+            String conversationKey = generator.conversationKey(peerId);
+            List<ChatMessage> initial = new ArrayList<>();
+            history.put(conversationKey, initial);
+            // El backend entrega en el mismo hilo: el snapshot inicial llega antes de que listenMessages vuelva
+            backend.listenMessages(conversationKey, null, snapshot -> {
+                if (recording) {
+                    snapshotKeys.add(conversationKey);
+                    snapshots.add(snapshot);
+                } else {
+                    initial.addAll(MessageChanges.of(snapshot).added);
+                }
+            });
+        }
+        recording = true;
+        generator.run(SNAPSHOTS, burstSize);
+    }
+
+    // Cada invocación parte del mismo historial; volver a aplicar un snapshot solo mediría el descarte por id
+    @Setup(Level.Invocation)
+    public void resetBuffers() {
+        for (Map.Entry<String, List<ChatMessage>> conversation : history.entrySet()) {
+            MessageBuffer buffer = new MessageBuffer();
+            buffer.insertAll(conversation.getValue(), (position, count) -> { });
+            buffers.put(conversation.getKey(), buffer);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SNAPSHOTS)
+    public int apply() {
+        int size = 0;
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            MessageBuffer buffer = buffers.get(snapshotKeys.get(i));
+            apply(buffer, snapshots.get(i));
+            size += buffer.size();
+        }
+        return size;
+    }
+
+    private static void apply(MessageBuffer buffer, List<MessageChange> snapshot) {
+        MessageChanges changes = MessageChanges.of(snapshot);
+        buffer.insertAll(changes.added, (position, count) -> { });
+        for (ChatMessage chatMessage : changes.changed) {
+            buffer.replace(chatMessage);
+        }
+        for (String messageId : changes.removed) {
+            buffer.remove(messageId);
+        }
+    }
+}
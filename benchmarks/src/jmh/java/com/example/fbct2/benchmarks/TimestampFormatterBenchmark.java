@@ -0,0 +1,53 @@
+package com.example.fbct2.benchmarks;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.TimestampFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Formatear la fecha de cada mensaje de una página; la línea base es el SimpleDateFormat por llamada de antes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimestampFormatterBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int messages;
+
+    private List<ChatMessage> ordered;
+    private TimestampFormatter formatter;
+
+    @Setup
+    public void setUp() {
+        ordered = Messages.ordered(messages);
+        formatter = new TimestampFormatter(Locale.US, ZoneId.of("UTC"));
+    }
+
+    @Benchmark
+    public void timestampFormatter(Blackhole blackhole) {
+        for (ChatMessage chatMessage : ordered) {
+            blackhole.consume(formatter.format(chatMessage.dateObject));
+        }
+    }
+
+    @Benchmark
+    public void simpleDateFormatPerCall(Blackhole blackhole) {
+        for (ChatMessage chatMessage : ordered) {
+            blackhole.consume(new SimpleDateFormat("MMMM dd, yyyy - hh:mm a", Locale.US).format(chatMessage.dateObject));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.fbct2.models;
+
+import java.util.Date;
+import java.util.Map;
+
+public class ChatMessage {
+    public String id, senderId, receiverId, message,dateTime;
+    public Date dateObject;
+    // Enviado desde este dispositivo y todavía sin confirmar por el servidor
+    public boolean pending;
+    // Lo calcula ChatAdapter la primera vez que pinta el mensaje; null mientras no se sepa
+    public Boolean sentByMe;
+    public boolean edited;
+    // Id de usuario a emoji; null si nadie reaccionó
+    public Map<String, String> reactions;
+    public String conversionId, conversionName, conversionImage, conversionImageId;
+
+}
@@ -3,5 +3,5 @@ package com.example.fbct2.models;
 import java.io.Serializable;
 
 public class User implements Serializable {
-    public String name,image,email,token,id;
+    public String name,image,imageId,email,token,id;
 }
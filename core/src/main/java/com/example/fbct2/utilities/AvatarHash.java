@@ -0,0 +1,32 @@
+package com.example.fbct2.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Hash del contenido de un avatar; el mismo Base64 siempre produce la misma clave
+public class AvatarHash {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private AvatarHash() {
+    }
+
+    public static String of(String encodedImage) {
+        return of(encodedImage.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String of(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
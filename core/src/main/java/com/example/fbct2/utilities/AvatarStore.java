@@ -0,0 +1,14 @@
+package com.example.fbct2.utilities;
+
+/**
+ * Almacén de avatares direccionado por contenido: cada imagen se guarda una sola vez bajo el
+ * hash de su Base64 y los documentos solo guardan ese id.
+ */
+public interface AvatarStore {
+
+    // Guarda la imagen (si no existía) y devuelve su id; la escritura puede completarse después
+    String put(String encodedImage);
+
+    // Bloqueante: se llama desde el hilo de AvatarLoader. Devuelve null si no existe o falla
+    String fetch(String imageId);
+}
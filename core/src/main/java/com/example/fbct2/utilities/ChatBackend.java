@@ -0,0 +1,77 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lo que ChatActivity necesita del servidor para enviar, recibir y modificar mensajes. La implementación
+ * real es FirestoreChatBackend; InMemoryChatBackend permite generar carga sin un proyecto en línea.
+ * Cada implementación decide en qué hilo entrega callbacks y listeners (en la app, el principal).
+ */
+public interface ChatBackend {
+
+    interface Callback<T> {
+        void onResult(T result);
+    }
+
+    interface Completion {
+        void onComplete(boolean success);
+    }
+
+    // Un snapshot: todos los cambios que llegaron juntos
+    interface ChangeListener {
+        void onChanges(List<MessageChange> changes);
+    }
+
+    interface Registration {
+        void remove();
+    }
+
+    // Escrituras que se confirman todas juntas o ninguna; a lo sumo una conversación por lote
+    interface Batch {
+        void setMessage(String conversationKey, ChatMessage chatMessage);
+
+        void updateConversation(String conversionId, String lastMessage, Date timestamp);
+
+        /**
+         * Crea la conversación con `participants` si todavía no existe; si ya existe solo cambia el último
+         * mensaje. Los campos de participantes de un documento existente nunca se reescriben, así el otro
+         * participante no ve la conversación cambiar de lado. Necesita leer del servidor: sin conexión falla.
+         */
+        void createOrUpdateConversation(String conversionId, Map<String, Object> participants, String lastMessage,
+                                        Date timestamp);
+
+        void commit(Completion completion);
+    }
+
+    // Id nuevo generado en el cliente, así reintentar el mismo envío nunca duplica el mensaje
+    String newMessageId();
+
+    Batch batch();
+
+    // Página anterior a `before` (null para la más reciente), en orden ascendente y sin mensajes borrados
+    void loadMessages(String conversationKey, MessageCursor before, int limit, Callback<MessagePage> callback);
+
+    // Mensajes posteriores a `after` (null para todos) y después cada cambio sobre ellos
+    Registration listenMessages(String conversationKey, MessageCursor after, ChangeListener listener);
+
+    // Mensajes de toda la conversación editados, con reacciones o borrados después de `since`
+    Registration listenMessageUpdates(String conversationKey, Date since, ChangeListener listener);
+
+    void editMessage(String messageId, String text, Completion completion);
+
+    // Borrado lógico: el mensaje queda marcado para que el cambio llegue a quien ya lo tiene guardado
+    void deleteMessage(String messageId, Completion completion);
+
+    // `emoji` null quita la reacción del usuario
+    void setReaction(String messageId, String userId, String emoji, Completion completion);
+
+    // Sin confirmación: si el resumen de la conversación todavía no existe no hay nada que actualizar
+    void updateLastMessage(String conversionId, String text);
+
+    // Lleva los mensajes de versiones anteriores a la clave canónica de la conversación
+    void migrateConversation(String userId, String otherUserId, Completion completion);
+}
@@ -0,0 +1,445 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Envío y sincronización de una conversación abierta, sin dependencias de Android. ChatActivity y el harness
+ * de latencia la usan tal cual, así que el camino que se mide es el mismo que corre en los teléfonos.
+ * Todo ocurre en el hilo donde el backend entrega sus callbacks (en la app, el principal); la pantalla se
+ * entera de los mensajes a través del almacén local.
+ */
+public class ChatSession {
+
+    // Identifica cada envío en las trazas asíncronas; compartido entre sesiones para que dos envíos en vuelo nunca coincidan
+    private static final AtomicInteger SEND_COOKIES = new AtomicInteger();
+
+    // El almacén local; en la app es MessageStore
+    public interface Store {
+        void upsertMessages(List<ChatMessage> messages);
+
+        void applyMessageChanges(List<ChatMessage> changes, List<String> removedIds);
+
+        void markSent(String messageId);
+
+        // Mensajes enviados desde aquí que el servidor todavía no confirmó, del más viejo al más nuevo
+        void loadPendingMessages(String conversationKey, ChatBackend.Callback<List<ChatMessage>> callback);
+    }
+
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+    }
+
+    public interface Listener {
+        // El servidor confirmó el envío
+        void onMessageSent(ChatMessage chatMessage);
+
+        // Se agotaron los reintentos; el mensaje sigue pendiente en el almacén para la próxima vez
+        void onSendFailed(ChatMessage chatMessage);
+
+        // Llegó una página o un snapshot del servidor, aunque no trajera mensajes
+        void onRemoteMessages();
+
+        // La última página no llegó hasta lo ya leído: lo local anterior a `oldestLoaded` queda detrás de un hueco
+        void onHistoryGap(MessageCursor oldestLoaded);
+    }
+
+    // Secciones de traza alrededor del trabajo de la sesión; en la app las arma Tracing con android.os.Trace
+    public interface Tracer {
+        Tracer NONE = new Tracer() {
+            @Override
+            public long beginSnapshot(int changes) {
+                return 0;
+            }
+
+            @Override
+            public void endSnapshot(long start) {
+            }
+
+            @Override
+            public long beginSend(int cookie) {
+                return 0;
+            }
+
+            @Override
+            public void endSend(int cookie, long start, boolean success) {
+            }
+        };
+
+        long beginSnapshot(int changes);
+
+        void endSnapshot(long start);
+
+        long beginSend(int cookie);
+
+        void endSend(int cookie, long start, boolean success);
+    }
+
+    private final ChatBackend backend;
+    private final Store store;
+    private final KeyValueStore preferences;
+    private final Scheduler scheduler;
+    private final String userId;
+    private final String receiverId;
+    private final String conversationKey;
+    // Nombres e imágenes de ambos participantes, solo para crear la conversación
+    private final Supplier<Map<String, Object>> participants;
+    private final Listener listener;
+    private final List<ChatBackend.Registration> registrations = new ArrayList<>();
+    private Tracer tracer = Tracer.NONE;
+    private String conversionId;
+    // Participantes de la conversación que crea un envío que el servidor todavía no confirmó
+    private HashMap<String, Object> pendingConversion;
+    // Fecha del mensaje más nuevo que se conoce; un reintento más viejo no pisa el último mensaje
+    private Date newestDate;
+    private boolean closed;
+
+    public ChatSession(ChatBackend backend, Store store, KeyValueStore preferences, Scheduler scheduler,
+                       String userId, String receiverId, Supplier<Map<String, Object>> participants,
+                       Listener listener) {
+        this.backend = backend;
+        this.store = store;
+        this.preferences = preferences;
+        this.scheduler = scheduler;
+        this.userId = userId;
+        this.receiverId = receiverId;
+        this.conversationKey = ConversationKeys.of(userId, receiverId);
+        this.participants = participants;
+        this.listener = listener;
+        // Sin consultas: o MainActivity ya vio la conversación, o se usará la clave canónica al crearla
+        conversionId = preferences.getString(Constants.KEY_CONVERSATION_ID_PREFIX + receiverId);
+    }
+
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public String conversationKey() {
+        return conversationKey;
+    }
+
+    /**
+     * Empieza a sincronizar después de pintar lo que ya había en el almacén. Siempre se lee solo la última
+     * página: si no alcanza hasta el último mensaje leído del servidor, lo que falta en el medio se pide al
+     * hacer scroll en lugar de traer todo de una vez. Lo que haya llegado por push o siga pendiente en el
+     * almacén no cuenta como leído.
+     */
+    public void open(List<ChatMessage> localMessages) {
+        noteMessages(localMessages);
+        // Sin nada local no hay ventana que continuar aunque el cursor exista: se carga la última página
+        MessageCursor start = localMessages.isEmpty() ? null : syncedThrough();
+        String migratedKey = Constants.KEY_MIGRATED_CONVERSATION_PREFIX + conversationKey;
+        if (preferences.getBoolean(migratedKey)) {
+            syncMessages(start);
+        } else {
+            // Los mensajes antiguos no tienen la clave canónica; se migran una sola vez por conversación
+            backend.migrateConversation(userId, receiverId, success -> {
+                if (closed) {
+                    return;
+                }
+                if (success) {
+                    preferences.putBoolean(migratedKey, true);
+                }
+                syncMessages(start);
+            });
+        }
+        resendPendingMessages();
+    }
+
+    public void close() {
+        closed = true;
+        for (ChatBackend.Registration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+    }
+
+    // El id se genera aquí: reintentar el mismo set() nunca crea un duplicado
+    public ChatMessage send(String text) {
+        ChatMessage pendingMessage = new ChatMessage();
+        pendingMessage.id = backend.newMessageId();
+        pendingMessage.senderId = userId;
+        pendingMessage.receiverId = receiverId;
+        pendingMessage.message = text;
+        pendingMessage.dateObject = new Date();
+        pendingMessage.pending = true;
+        noteMessages(Collections.singletonList(pendingMessage));
+        // Queda guardado como pendiente para reenviarlo aunque el proceso muera antes de la confirmación
+        store.upsertMessages(Collections.singletonList(pendingMessage));
+        commitMessage(pendingMessage, 0);
+        return pendingMessage;
+    }
+
+    // Página remota anterior a `before`; el callback recibe si el servidor tiene más mensajes viejos
+    public void loadOlderMessages(MessageCursor before, ChatBackend.Callback<Boolean> callback) {
+        backend.loadMessages(conversationKey, before, Constants.MESSAGES_PAGE_SIZE, page -> {
+            if (closed) {
+                return;
+            }
+            if (!page.failed && hasGapBefore(before)) {
+                // El hueco se cierra cuando una página llega a lo que ya estaba leído
+                boolean reachedGap = !page.hasMore || page.messages.isEmpty()
+                        || MessageCursor.of(page.messages.get(0)).compareTo(gapFrom()) <= 0;
+                if (reachedGap) {
+                    setGapFrom(null);
+                }
+            }
+            store.upsertMessages(page.messages);
+            callback.onResult(page.hasMore);
+        });
+    }
+
+    // Si al almacén le pueden faltar mensajes anteriores a `before`: el scroll debe pedirlos al servidor
+    public boolean hasGapBefore(MessageCursor before) {
+        MessageCursor gapFrom = gapFrom();
+        return gapFrom != null && before.compareTo(gapFrom) > 0;
+    }
+
+    // Fuera del lote del mensaje: si el resumen no existe todavía, la edición no debe fallar por eso
+    public void updateLastMessage(String text) {
+        if (conversionId != null && pendingConversion == null) {
+            backend.updateLastMessage(conversionId, text);
+        }
+    }
+
+    private void syncMessages(MessageCursor syncedThrough) {
+        listenMessageChanges();
+        loadLatestMessages(syncedThrough, 0);
+    }
+
+    /**
+     * Carga solo la ventana más reciente; los mensajes anteriores se piden al hacer scroll hacia arriba. Si la
+     * lectura falla se reintenta: sin la página no hay desde dónde acotar el listener en vivo.
+     */
+    private void loadLatestMessages(MessageCursor syncedThrough, int attempt) {
+        backend.loadMessages(conversationKey, null, Constants.MESSAGES_PAGE_SIZE, page -> {
+            if (closed) {
+                return;
+            }
+            if (page.failed) {
+                long delay = Constants.SEND_RETRY_BASE_MS << Math.min(attempt, Constants.SEND_MAX_ATTEMPTS - 1);
+                scheduler.postDelayed(() -> {
+                    if (!closed) {
+                        loadLatestMessages(syncedThrough, attempt + 1);
+                    }
+                }, delay);
+                return;
+            }
+            // Una conversación leída hace semanas puede tener miles de mensajes nuevos: no se traen todos
+            if (syncedThrough != null && page.hasMore && !page.messages.isEmpty()) {
+                MessageCursor oldest = MessageCursor.of(page.messages.get(0));
+                if (oldest.compareTo(syncedThrough) > 0) {
+                    openGap(syncedThrough);
+                    listener.onHistoryGap(oldest);
+                }
+            }
+            noteMessages(page.messages);
+            store.upsertMessages(page.messages);
+            // La última página llega hasta el presente: todo lo anterior a su mensaje más nuevo está leído
+            advanceSyncedThrough(page.newest);
+            listener.onRemoteMessages();
+            // Una página sin documentos, leída del servidor, significa que la conversación todavía no existe:
+            // escuchar desde el principio no vuelve a leer nada
+            listenNewMessages(page.newest);
+        });
+    }
+
+    // El listener en vivo solo cubre los mensajes más nuevos que la ventana cargada
+    private void listenNewMessages(MessageCursor newestLoaded) {
+        registrations.add(backend.listenMessages(conversationKey, newestLoaded, this::onMessageSnapshot));
+    }
+
+    /**
+     * Ediciones, reacciones y borrados de cualquier mensaje de la conversación, no solo de la ventana en vivo.
+     * Cada cambio marca updatedAt, así que basta con escuchar lo posterior al último cambio ya aplicado.
+     */
+    private void listenMessageChanges() {
+        String syncedAtKey = Constants.KEY_MESSAGES_SYNCED_AT_PREFIX + conversationKey;
+        Date since = new Date(preferences.getLong(syncedAtKey));
+        registrations.add(backend.listenMessageUpdates(conversationKey, since, snapshot -> {
+            if (closed) {
+                return;
+            }
+            long syncedAt = preferences.getLong(syncedAtKey);
+            for (MessageChange change : snapshot) {
+                if (change.updatedAt != null) {
+                    syncedAt = Math.max(syncedAt, change.updatedAt.getTime());
+                }
+            }
+            preferences.putLong(syncedAtKey, syncedAt);
+            // Aquí todo mensaje que entra al resultado es un cambio sobre uno que ya existía
+            MessageChanges changes = MessageChanges.of(snapshot);
+            List<ChatMessage> changed = new ArrayList<>(changes.added);
+            changed.addAll(changes.changed);
+            store.applyMessageChanges(changed, changes.removed);
+        }));
+    }
+
+    // Los mensajes nuevos y los cambios pasan por el almacén; la pantalla se actualiza con lo que este reporta
+    private void onMessageSnapshot(List<MessageChange> snapshot) {
+        if (closed) {
+            return;
+        }
+        long start = tracer.beginSnapshot(snapshot.size());
+        try {
+            MessageChanges changes = MessageChanges.of(snapshot);
+            noteMessages(changes.added);
+            store.upsertMessages(changes.added);
+            store.applyMessageChanges(changes.changed, changes.removed);
+            advanceSyncedThrough(snapshot);
+            listener.onRemoteMessages();
+        } finally {
+            tracer.endSnapshot(start);
+        }
+    }
+
+    // Lo que quedó sin confirmar en una sesión anterior se reenvía con el mismo id
+    private void resendPendingMessages() {
+        store.loadPendingMessages(conversationKey, messages -> {
+            if (closed) {
+                return;
+            }
+            for (ChatMessage chatMessage : messages) {
+                commitMessage(chatMessage, 0);
+            }
+        });
+    }
+
+    // Mensaje y resumen de la conversación viajan juntos: una sola ida y vuelta, y nunca uno sin el otro
+    private void commitMessage(ChatMessage pendingMessage, int attempt) {
+        ChatBackend.Batch batch = backend.batch();
+        batch.setMessage(conversationKey, pendingMessage);
+        // Un reintento de un mensaje viejo no debe pisar el último mensaje de la conversación
+        boolean updatesConversion = newestDate == null || !pendingMessage.dateObject.before(newestDate);
+        if (updatesConversion) {
+            addConversionUpdate(batch, pendingMessage);
+        }
+        int cookie = SEND_COOKIES.incrementAndGet();
+        long start = tracer.beginSend(cookie);
+        batch.commit(success -> {
+            tracer.endSend(cookie, start, success);
+            if (closed) {
+                return;
+            }
+            if (success) {
+                if (updatesConversion && pendingConversion != null) {
+                    preferences.putString(Constants.KEY_CONVERSATION_ID_PREFIX + receiverId, conversionId);
+                    pendingConversion = null;
+                }
+                store.markSent(pendingMessage.id);
+                listener.onMessageSent(pendingMessage);
+            } else if (attempt + 1 < Constants.SEND_MAX_ATTEMPTS) {
+                if (!conversationKey.equals(conversionId)) {
+                    // El documento viejo pudo haber sido migrado a la clave canónica; se reescribe allí
+                    conversionId = null;
+                }
+                long delay = Constants.SEND_RETRY_BASE_MS << attempt;
+                scheduler.postDelayed(() -> {
+                    if (!closed) {
+                        commitMessage(pendingMessage, attempt + 1);
+                    }
+                }, delay);
+            } else {
+                // Sigue pendiente en el almacén; se vuelve a intentar la próxima vez que se abra el chat
+                listener.onSendFailed(pendingMessage);
+            }
+        });
+    }
+
+    /**
+     * Si todavía no se conoce la conversación se crea en el mismo lote, con la clave canónica como id para
+     * que los dos participantes escriban siempre en el mismo documento. Hasta que un lote se confirma, cada
+     * intento la crea solo si no existe: si el otro participante ya la creó, conserva sus senderId y
+     * receiverId y solo cambia el último mensaje.
+     */
+    private void addConversionUpdate(ChatBackend.Batch batch, ChatMessage chatMessage) {
+        if (conversionId != null && pendingConversion == null) {
+            batch.updateConversation(conversionId, chatMessage.message, chatMessage.dateObject);
+            return;
+        }
+        if (pendingConversion == null) {
+            pendingConversion = new HashMap<>(participants.get());
+            pendingConversion.put(Constants.KEY_SENDER_ID, chatMessage.senderId);
+            pendingConversion.put(Constants.KEY_RECEIVER_ID, receiverId);
+            conversionId = conversationKey;
+        }
+        batch.createOrUpdateConversation(conversionId, pendingConversion, chatMessage.message, chatMessage.dateObject);
+    }
+
+    /**
+     * Último mensaje hasta el que se leyó la conversación del servidor sin huecos. Solo lo mueven la última
+     * página y el listener en vivo, que empieza justo ahí. Un push guarda mensajes sueltos y un pendiente
+     * lleva la hora del teléfono: si cualquiera de los dos marcara el inicio del listener, los mensajes que
+     * faltan antes de ellos no llegarían nunca.
+     */
+    private MessageCursor syncedThrough() {
+        return readCursor(Constants.KEY_MESSAGES_SYNCED_THROUGH_PREFIX, Constants.KEY_MESSAGES_SYNCED_THROUGH_ID_PREFIX);
+    }
+
+    private MessageCursor gapFrom() {
+        return readCursor(Constants.KEY_MESSAGES_GAP_FROM_PREFIX, Constants.KEY_MESSAGES_GAP_FROM_ID_PREFIX);
+    }
+
+    // Un solo hueco por conversación: si ya había uno sin completar, el nuevo arranca desde el más viejo
+    private void openGap(MessageCursor syncedThrough) {
+        MessageCursor current = gapFrom();
+        if (current == null || syncedThrough.compareTo(current) < 0) {
+            setGapFrom(syncedThrough);
+        }
+    }
+
+    private void setGapFrom(MessageCursor cursor) {
+        preferences.putLong(Constants.KEY_MESSAGES_GAP_FROM_PREFIX + conversationKey,
+                cursor != null ? cursor.timestamp.getTime() : 0L);
+        preferences.putString(Constants.KEY_MESSAGES_GAP_FROM_ID_PREFIX + conversationKey,
+                cursor != null ? cursor.id : null);
+    }
+
+    private MessageCursor readCursor(String timestampPrefix, String idPrefix) {
+        long timestamp = preferences.getLong(timestampPrefix + conversationKey);
+        String id = preferences.getString(idPrefix + conversationKey);
+        return timestamp > 0 && id != null ? new MessageCursor(new Date(timestamp), id) : null;
+    }
+
+    private void advanceSyncedThrough(MessageCursor cursor) {
+        MessageCursor current = syncedThrough();
+        if (cursor == null || (current != null && cursor.compareTo(current) <= 0)) {
+            return;
+        }
+        preferences.putLong(Constants.KEY_MESSAGES_SYNCED_THROUGH_PREFIX + conversationKey,
+                cursor.timestamp.getTime());
+        preferences.putString(Constants.KEY_MESSAGES_SYNCED_THROUGH_ID_PREFIX + conversationKey, cursor.id);
+    }
+
+    // Solo cuenta lo confirmado por el servidor: un snapshot de la caché puede saltarse mensajes
+    private void advanceSyncedThrough(List<MessageChange> snapshot) {
+        MessageCursor newest = null;
+        for (MessageChange change : snapshot) {
+            if (change.message == null || change.fromCache || change.message.pending
+                    || change.message.dateObject == null) {
+                continue;
+            }
+            MessageCursor cursor = MessageCursor.of(change.message);
+            if (newest == null || cursor.compareTo(newest) > 0) {
+                newest = cursor;
+            }
+        }
+        advanceSyncedThrough(newest);
+    }
+
+    private void noteMessages(List<ChatMessage> messages) {
+        for (ChatMessage chatMessage : messages) {
+            if (chatMessage.dateObject != null && (newestDate == null || chatMessage.dateObject.after(newestDate))) {
+                newestDate = chatMessage.dateObject;
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.fbct2.utilities;
+
+import java.util.HashMap;
+
+public class Constants {
+    public static final String KEY_COLLECTION_USERS = "users";
+    public static final String KEY_NAME = "name";
+    public static final String KEY_EMAIL = "email";
+    public static final String KEY_PASSWORD = "password";
+    public static final String KEY_PREFERENCE_NAME ="chatAppPreference";
+    public static final String KEY_IS_SIGNED_IN ="isSignedIn";
+    public static final String KEY_USER_ID = "userId";
+    public static final String KEY_IMAGE = "image";
+    public static final String KEY_IMAGE_ID = "imageId";
+    public static final String KEY_UPDATED_AT = "updatedAt";
+    public static final String KEY_USERS_SYNCED_AT = "usersSyncedAt";
+    public static final String KEY_USERS_DIRECTORY_COMPLETE = "usersDirectoryComplete";
+    public static final String KEY_COLLECTION_AVATARS = "avatars";
+    public static final String KEY_COLLECTION_PRESENCE = "presence";
+
+    public static final String KEY_FCM_TOKEN = "fcmToken";
+    public static final String KEY_USER= "user";
+    public static final String KEY_COLLECTION_CHAT = "chat";
+    public static final String KEY_SENDER_ID="sendId";
+    public static final String KEY_RECEIVER_ID="receiverId";
+    public static final String KEY_MESSAGE = "message";
+    public static final String KEY_MESSAGE_ID = "messageId";
+    public static final String KEY_MESSAGE_COUNT = "messageCount";
+    public static final String KEY_MESSAGES = "messages";
+    public static final String KEY_EDITED = "edited";
+    public static final String KEY_DELETED = "deleted";
+    public static final String KEY_REACTIONS = "reactions";
+    // Último updatedAt de mensajes aplicado en cada conversación, por clave de conversación
+    public static final String KEY_MESSAGES_SYNCED_AT_PREFIX = "messagesSyncedAt_";
+    // Hasta qué mensaje (fecha e id) se leyó la conversación del servidor sin huecos, por clave de conversación
+    public static final String KEY_MESSAGES_SYNCED_THROUGH_PREFIX = "messagesSyncedThrough_";
+    public static final String KEY_MESSAGES_SYNCED_THROUGH_ID_PREFIX = "messagesSyncedThroughId_";
+    // Último mensaje leído antes de un hueco en el almacén local; lo posterior se pide al servidor al hacer scroll
+    public static final String KEY_MESSAGES_GAP_FROM_PREFIX = "messagesGapFrom_";
+    public static final String KEY_MESSAGES_GAP_FROM_ID_PREFIX = "messagesGapFromId_";
+    public static final String KEY_CONVERSATION_KEY = "conversationKey";
+    public static final String KEY_MIGRATED_CONVERSATION_PREFIX = "migratedConversation_";
+    // Id del documento de `conversations` con cada contacto, por id del contacto
+    public static final String KEY_CONVERSATION_ID_PREFIX = "conversationId_";
+    // MainActivity abierta desde el resumen de notificaciones
+    public static final String KEY_FROM_NOTIFICATION_SUMMARY = "fromNotificationSummary";
+    public static final String KEY_TIMESTAMP="timestamp";
+    public static final String KEY_COLLECTION_CONVERSATIONS = "conversations";
+    public static final String KEY_SENDER_NAME = "senderName";
+    public static final String KEY_RECEIVER_NAME = "receiverName";
+    public static final String KEY_SENDER_IMAGE = "senderImage";
+    public static final String KEY_RECEIVER_IMAGE = "receiverImage";
+    public static final String KEY_SENDER_IMAGE_ID = "senderImageId";
+    public static final String KEY_RECEIVER_IMAGE_ID = "receiverImageId";
+    public static final String KEY_LAST_MESSAGE = "lastMessage";
+    public static final String KEY_AVAILABILITY = "availability";
+    public static final String KEY_LAST_SEEN = "lastSeen";
+    public static final int MESSAGES_PAGE_SIZE = 30;
+    public static final int MESSAGES_PREFETCH_DISTANCE = 5;
+    public static final int USERS_PAGE_SIZE = 30;
+    public static final int SEND_MAX_ATTEMPTS = 5;
+    public static final long SEND_RETRY_BASE_MS = 1_000;
+    public static final int USERS_PREFETCH_DISTANCE = 5;
+    public static final String REMOTE_MSG_AUTHOIIZATION = "Authorization";
+    public static final String REMOTE_MSG_CONTENT_TYPE = "Content-Type";
+    public static final String REMOTE_MSG_DATA = "data";
+    public static final String REMOTE_MSG_REGISTRATION_IDS = "registration_ids";
+
+
+    public static HashMap<String,String> remoteMsgHeaders = null;
+    public static HashMap<String,String> getRemoteMsgHeaders(){
+        if(remoteMsgHeaders == null) {
+            remoteMsgHeaders = new HashMap<>();
+            remoteMsgHeaders.put(
+                    REMOTE_MSG_AUTHOIIZATION,
+                    "key=7fee40e13cd498f8748ee830bc2dd8fb625e3937"
+            );
+            remoteMsgHeaders.put(
+                    REMOTE_MSG_CONTENT_TYPE,
+                    "application/json"
+            );
+
+        }
+        return remoteMsgHeaders;
+    }
+}
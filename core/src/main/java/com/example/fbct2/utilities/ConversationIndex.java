@@ -0,0 +1,61 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Conversaciones recientes indexadas por conversionId y ordenadas de la más nueva a la más vieja
+public class ConversationIndex {
+
+    // Fecha descendente y conversionId como desempate, para que la búsqueda binaria encuentre la posición exacta
+    private static final Comparator<ChatMessage> NEWEST_FIRST = (obj1, obj2) -> {
+        int byDate = compareDates(obj2, obj1);
+        return byDate != 0 ? byDate : obj1.conversionId.compareTo(obj2.conversionId);
+    };
+
+    private final Map<String, ChatMessage> conversationsById = new HashMap<>();
+    private final List<ChatMessage> conversations = new ArrayList<>();
+
+    public int size() {
+        return conversations.size();
+    }
+
+    public ChatMessage get(String conversionId) {
+        return conversationsById.get(conversionId);
+    }
+
+    // Reemplaza la conversación con el mismo id y la mueve a su nueva posición
+    public void upsert(ChatMessage conversation) {
+        ChatMessage previous = conversationsById.put(conversation.conversionId, conversation);
+        if (previous != null) {
+            conversations.remove(Collections.binarySearch(conversations, previous, NEWEST_FIRST));
+        }
+        int position = Collections.binarySearch(conversations, conversation, NEWEST_FIRST);
+        conversations.add(position < 0 ? -(position + 1) : position, conversation);
+    }
+
+    public void remove(String conversionId) {
+        ChatMessage previous = conversationsById.remove(conversionId);
+        if (previous != null) {
+            conversations.remove(Collections.binarySearch(conversations, previous, NEWEST_FIRST));
+        }
+    }
+
+    // Copia inmutable para entregar al adapter; el índice puede seguir cambiando mientras se calcula el diff
+    public List<ChatMessage> snapshot() {
+        return Collections.unmodifiableList(new ArrayList<>(conversations));
+    }
+
+    // Una fecha nula (escritura pendiente) se considera la más reciente
+    private static int compareDates(ChatMessage obj1, ChatMessage obj2) {
+        if (obj1.dateObject == null || obj2.dateObject == null) {
+            return obj1.dateObject == null ? (obj2.dateObject == null ? 0 : 1) : -1;
+        }
+        return obj1.dateObject.compareTo(obj2.dateObject);
+    }
+}
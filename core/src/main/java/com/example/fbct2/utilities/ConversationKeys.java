@@ -0,0 +1,15 @@
+package com.example.fbct2.utilities;
+
+public class ConversationKeys {
+
+    private ConversationKeys() {
+    }
+
+    // La clave no depende de quién envía: siempre se ordena el par de ids
+    public static String of(String userId, String otherUserId) {
+        if (userId.compareTo(otherUserId) <= 0) {
+            return userId + "_" + otherUserId;
+        }
+        return otherUserId + "_" + userId;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.fbct2.utilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sustituto local de FirestoreAvatarStore para pruebas
+public class InMemoryAvatarStore implements AvatarStore {
+
+    private final Map<String, String> images = new ConcurrentHashMap<>();
+
+    @Override
+    public String put(String encodedImage) {
+        String imageId = AvatarHash.of(encodedImage);
+        images.put(imageId, encodedImage);
+        return imageId;
+    }
+
+    @Override
+    public String fetch(String imageId) {
+        return images.get(imageId);
+    }
+
+    public int size() {
+        return images.size();
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Sustituto determinista de FirestoreChatBackend para pruebas y generación de carga. Con el mismo reloj
+ * y la misma secuencia de escrituras produce siempre los mismos ids, fechas y snapshots. Cada lote
+ * confirmado llega a cada listener afectado como un solo snapshot, igual que en Firestore.
+ */
+public class InMemoryChatBackend implements ChatBackend {
+
+    // Fecha fija de arranque del reloj lógico por defecto
+    public static final long EPOCH = 1_700_000_000_000L;
+
+    // Claves de los campos de una conversación, como en Firestore
+    private static final String LAST_MESSAGE = "lastMessage";
+    private static final String TIMESTAMP = "timestamp";
+
+    private static final Comparator<StoredMessage> BY_TIMESTAMP =
+            (obj1, obj2) -> obj1.cursor().compareTo(obj2.cursor());
+
+    private static class StoredMessage {
+        final String conversationKey;
+        final ChatMessage message;
+        boolean deleted;
+        Date updatedAt;
+
+        StoredMessage(String conversationKey, ChatMessage message) {
+            this.conversationKey = conversationKey;
+            this.message = message;
+        }
+
+        MessageCursor cursor() {
+            return MessageCursor.of(message);
+        }
+    }
+
+    private class Listener implements Registration {
+        final String conversationKey;
+        final MessageCursor after;
+        final Date since;
+        // Escucha cambios por updatedAt (desde `since`) en lugar de mensajes por posición (desde `after`)
+        final boolean updates;
+        final ChangeListener changeListener;
+        final Set<String> matched = new HashSet<>();
+
+        Listener(String conversationKey, MessageCursor after, Date since, boolean updates,
+                 ChangeListener changeListener) {
+            this.conversationKey = conversationKey;
+            this.after = after;
+            this.since = since;
+            this.updates = updates;
+            this.changeListener = changeListener;
+        }
+
+        boolean matches(StoredMessage stored) {
+            if (!stored.conversationKey.equals(conversationKey)) {
+                return false;
+            }
+            if (updates) {
+                return stored.updatedAt != null && (since == null || stored.updatedAt.after(since));
+            }
+            return after == null || stored.cursor().compareTo(after) > 0;
+        }
+
+        @Override
+        public void remove() {
+            synchronized (InMemoryChatBackend.this) {
+                listeners.remove(this);
+            }
+        }
+    }
+
+    private class InMemoryBatch implements Batch {
+        private final Map<String, StoredMessage> messages = new LinkedHashMap<>();
+        private final List<Runnable> conversationWrites = new ArrayList<>();
+
+        @Override
+        public void setMessage(String conversationKey, ChatMessage chatMessage) {
+            messages.put(chatMessage.id, new StoredMessage(conversationKey, copyOf(chatMessage)));
+        }
+
+        @Override
+        public void updateConversation(String conversionId, String lastMessage, Date timestamp) {
+            conversationWrites.add(() -> {
+                Map<String, Object> conversation = conversations.get(conversionId);
+                if (conversation != null) {
+                    conversation.put(LAST_MESSAGE, lastMessage);
+                    conversation.put(TIMESTAMP, timestamp);
+                }
+            });
+        }
+
+        @Override
+        public void createOrUpdateConversation(String conversionId, Map<String, Object> participants,
+                                               String lastMessage, Date timestamp) {
+            Map<String, Object> copy = new HashMap<>(participants);
+            conversationWrites.add(() -> {
+                Map<String, Object> conversation = conversations.get(conversionId);
+                if (conversation == null) {
+                    conversation = copy;
+                    conversations.put(conversionId, conversation);
+                }
+                conversation.put(LAST_MESSAGE, lastMessage);
+                conversation.put(TIMESTAMP, timestamp);
+            });
+        }
+
+        @Override
+        public void commit(Completion completion) {
+            List<Runnable> deliveries;
+            synchronized (InMemoryChatBackend.this) {
+                for (Runnable write : conversationWrites) {
+                    write.run();
+                }
+                for (StoredMessage stored : messages.values()) {
+                    StoredMessage previous = store.get(stored.message.id);
+                    if (previous != null) {
+                        stored.deleted = previous.deleted;
+                        stored.updatedAt = previous.updatedAt;
+                    }
+                    store.put(stored.message.id, stored);
+                }
+                deliveries = changesFor(messages.values());
+            }
+            deliver(deliveries);
+            executor.execute(() -> completion.onComplete(true));
+        }
+    }
+
+    private final LongSupplier clock;
+    private final Executor executor;
+    private final Map<String, StoredMessage> store = new HashMap<>();
+    private final Map<String, Map<String, Object>> conversations = new HashMap<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private long nextId;
+
+    // Reloj lógico que avanza un milisegundo por lectura y entrega en el mismo hilo que escribe
+    public InMemoryChatBackend() {
+        this(new AtomicLong(EPOCH)::incrementAndGet, Runnable::run);
+    }
+
+    public InMemoryChatBackend(LongSupplier clock, Executor executor) {
+        this.clock = clock;
+        this.executor = executor;
+    }
+
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    public synchronized int messageCount() {
+        return store.size();
+    }
+
+    public synchronized Map<String, Object> conversation(String conversionId) {
+        Map<String, Object> conversation = conversations.get(conversionId);
+        return conversation != null ? new HashMap<>(conversation) : null;
+    }
+
+    @Override
+    public synchronized String newMessageId() {
+        return String.format("m%08d", nextId++);
+    }
+
+    @Override
+    public Batch batch() {
+        return new InMemoryBatch();
+    }
+
+    @Override
+    public void loadMessages(String conversationKey, MessageCursor before, int limit,
+                             Callback<MessagePage> callback) {
+        List<ChatMessage> page = new ArrayList<>();
+        boolean hasMore;
+        MessageCursor newest = null;
+        synchronized (this) {
+            List<StoredMessage> matching = new ArrayList<>();
+            for (StoredMessage stored : store.values()) {
+                if (stored.conversationKey.equals(conversationKey)
+                        && (before == null || stored.cursor().compareTo(before) < 0)) {
+                    matching.add(stored);
+                }
+            }
+            Collections.sort(matching, BY_TIMESTAMP);
+            int from = Math.max(0, matching.size() - limit);
+            hasMore = from > 0;
+            for (StoredMessage stored : matching.subList(from, matching.size())) {
+                newest = stored.cursor();
+                if (!stored.deleted) {
+                    page.add(copyOf(stored.message));
+                }
+            }
+        }
+        MessagePage result = new MessagePage(page, hasMore, newest);
+        executor.execute(() -> callback.onResult(result));
+    }
+
+    @Override
+    public Registration listenMessages(String conversationKey, MessageCursor after, ChangeListener listener) {
+        return listen(new Listener(conversationKey, after, null, false, listener));
+    }
+
+    @Override
+    public Registration listenMessageUpdates(String conversationKey, Date since, ChangeListener listener) {
+        return listen(new Listener(conversationKey, null, since, true, listener));
+    }
+
+    @Override
+    public void editMessage(String messageId, String text, Completion completion) {
+        update(messageId, stored -> {
+            stored.message.message = text;
+            stored.message.edited = true;
+        }, completion);
+    }
+
+    @Override
+    public void deleteMessage(String messageId, Completion completion) {
+        update(messageId, stored -> {
+            stored.deleted = true;
+            stored.message.message = "";
+            stored.message.reactions = null;
+        }, completion);
+    }
+
+    @Override
+    public void setReaction(String messageId, String userId, String emoji, Completion completion) {
+        update(messageId, stored -> {
+            Map<String, String> reactions = stored.message.reactions != null
+                    ? new HashMap<>(stored.message.reactions) : new HashMap<>();
+            if (emoji == null) {
+                reactions.remove(userId);
+            } else {
+                reactions.put(userId, emoji);
+            }
+            stored.message.reactions = reactions.isEmpty() ? null : reactions;
+        }, completion);
+    }
+
+    @Override
+    public void updateLastMessage(String conversionId, String text) {
+        synchronized (this) {
+            Map<String, Object> conversation = conversations.get(conversionId);
+            if (conversation != null) {
+                conversation.put(LAST_MESSAGE, text);
+            }
+        }
+    }
+
+    // Aquí no existen mensajes de versiones anteriores
+    @Override
+    public void migrateConversation(String userId, String otherUserId, Completion completion) {
+        executor.execute(() -> completion.onComplete(true));
+    }
+
+    private interface Mutation {
+        void apply(StoredMessage stored);
+    }
+
+    private void update(String messageId, Mutation mutation, Completion completion) {
+        List<Runnable> deliveries = null;
+        synchronized (this) {
+            StoredMessage stored = store.get(messageId);
+            if (stored != null) {
+                mutation.apply(stored);
+                stored.updatedAt = new Date(clock.getAsLong());
+                deliveries = changesFor(Collections.singletonList(stored));
+            }
+        }
+        if (deliveries == null) {
+            executor.execute(() -> completion.onComplete(false));
+            return;
+        }
+        deliver(deliveries);
+        executor.execute(() -> completion.onComplete(true));
+    }
+
+    private Registration listen(Listener listener) {
+        List<MessageChange> initial = new ArrayList<>();
+        synchronized (this) {
+            List<StoredMessage> matching = new ArrayList<>();
+            for (StoredMessage stored : store.values()) {
+                if (listener.matches(stored)) {
+                    matching.add(stored);
+                }
+            }
+            Collections.sort(matching, listener.updates
+                    ? (obj1, obj2) -> obj1.updatedAt.compareTo(obj2.updatedAt) : BY_TIMESTAMP);
+            for (StoredMessage stored : matching) {
+                listener.matched.add(stored.message.id);
+                initial.add(toChange(MessageChange.Type.ADDED, stored));
+            }
+            listeners.add(listener);
+        }
+        if (!initial.isEmpty()) {
+            executor.execute(() -> listener.changeListener.onChanges(initial));
+        }
+        return listener;
+    }
+
+    // Se arma bajo el lock para que el snapshot refleje exactamente el estado después de la escritura
+    private List<Runnable> changesFor(Iterable<StoredMessage> written) {
+        List<Runnable> deliveries = new ArrayList<>();
+        for (Listener listener : listeners) {
+            List<MessageChange> changes = new ArrayList<>();
+            for (StoredMessage stored : written) {
+                boolean wasMatched = listener.matched.contains(stored.message.id);
+                if (listener.matches(stored)) {
+                    listener.matched.add(stored.message.id);
+                    changes.add(toChange(wasMatched ? MessageChange.Type.MODIFIED : MessageChange.Type.ADDED, stored));
+                } else if (wasMatched) {
+                    listener.matched.remove(stored.message.id);
+                    changes.add(new MessageChange(MessageChange.Type.REMOVED, stored.message.id, null, false, null));
+                }
+            }
+            if (!changes.isEmpty()) {
+                deliveries.add(() -> listener.changeListener.onChanges(changes));
+            }
+        }
+        return deliveries;
+    }
+
+    private void deliver(List<Runnable> deliveries) {
+        for (Runnable delivery : deliveries) {
+            executor.execute(delivery);
+        }
+    }
+
+    // Cada snapshot lleva copias: quien lo recibe puede modificarlas sin tocar lo guardado
+    private static MessageChange toChange(MessageChange.Type type, StoredMessage stored) {
+        return new MessageChange(type, stored.message.id, copyOf(stored.message), stored.deleted, stored.updatedAt);
+    }
+
+    private static ChatMessage copyOf(ChatMessage chatMessage) {
+        ChatMessage copy = new ChatMessage();
+        copy.id = chatMessage.id;
+        copy.senderId = chatMessage.senderId;
+        copy.receiverId = chatMessage.receiverId;
+        copy.message = chatMessage.message;
+        copy.dateObject = chatMessage.dateObject;
+        copy.edited = chatMessage.edited;
+        copy.reactions = chatMessage.reactions != null ? new HashMap<>(chatMessage.reactions) : null;
+        return copy;
+    }
+}
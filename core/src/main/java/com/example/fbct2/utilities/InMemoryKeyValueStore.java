@@ -0,0 +1,42 @@
+package com.example.fbct2.utilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Preferencias de un proceso que no sobreviven al reinicio: pruebas y clientes simulados
+public class InMemoryKeyValueStore implements KeyValueStore {
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    @Override
+    public synchronized Boolean getBoolean(String key) {
+        return Boolean.TRUE.equals(values.get(key));
+    }
+
+    @Override
+    public synchronized void putBoolean(String key, boolean value) {
+        values.put(key, value);
+    }
+
+    @Override
+    public synchronized String getString(String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    @Override
+    public synchronized void putString(String key, String value) {
+        values.put(key, value);
+    }
+
+    @Override
+    public synchronized long getLong(String key) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : 0L;
+    }
+
+    @Override
+    public synchronized void putLong(String key, long value) {
+        values.put(key, value);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.fbct2.utilities;
+
+// Preferencias persistentes; en la app las guarda PreferenceManager en SharedPreferences
+public interface KeyValueStore {
+
+    Boolean getBoolean(String key);
+
+    void putBoolean(String key, boolean value);
+
+    String getString(String key);
+
+    void putString(String key, String value);
+
+    long getLong(String key);
+
+    void putLong(String key, long value);
+}
@@ -0,0 +1,76 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Simula muchos contactos escribiéndole al mismo usuario en ráfagas. Cada ráfaga es un lote de varios
+ * mensajes de un contacto al azar, así que llega como un solo snapshot a quien escucha esa conversación.
+ * Con la misma semilla y el mismo backend la secuencia es siempre la misma.
+ */
+public class LoadGenerator {
+
+    private final ChatBackend backend;
+    private final String userId;
+    private final List<String> peerIds = new ArrayList<>();
+    private final Random random;
+    private final LongSupplier clock;
+    private long sent;
+
+    public LoadGenerator(ChatBackend backend, String userId, int peers, long seed, LongSupplier clock) {
+        this.backend = backend;
+        this.userId = userId;
+        this.random = new Random(seed);
+        this.clock = clock;
+        for (int i = 0; i < peers; i++) {
+            peerIds.add(String.format("peer%05d", i));
+        }
+    }
+
+    public List<String> peerIds() {
+        return peerIds;
+    }
+
+    public String conversationKey(String peerId) {
+        return ConversationKeys.of(userId, peerId);
+    }
+
+    public long sent() {
+        return sent;
+    }
+
+    // Devuelve el contacto que envió la ráfaga
+    public String burst(int size) {
+        String peerId = peerIds.get(random.nextInt(peerIds.size()));
+        String conversationKey = conversationKey(peerId);
+        ChatBackend.Batch batch = backend.batch();
+        ChatMessage last = null;
+        for (int i = 0; i < size; i++) {
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.id = backend.newMessageId();
+            chatMessage.senderId = peerId;
+            chatMessage.receiverId = userId;
+            chatMessage.message = "mensaje " + (sent + i) + " de " + peerId;
+            chatMessage.dateObject = new Date(clock.getAsLong());
+            batch.setMessage(conversationKey, chatMessage);
+            last = chatMessage;
+        }
+        if (last != null) {
+            batch.updateConversation(conversationKey, last.message, last.dateObject);
+        }
+        sent += size;
+        batch.commit(success -> { });
+        return peerId;
+    }
+
+    public void run(int bursts, int burstSize) {
+        for (int i = 0; i < bursts; i++) {
+            burst(burstSize);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Lista de mensajes siempre ordenada por fecha; cada inserción se ubica con búsqueda binaria.
+// Un mensaje con un id ya presente se ignora, así da igual si llega desde el almacén local o desde Firestore.
+// El índice por id permite aplicar ediciones y borrados sin recorrer la lista.
+public class MessageBuffer {
+
+    public interface Listener {
+        void onInserted(int position, int count);
+    }
+
+    private final List<ChatMessage> messages = new ArrayList<>();
+    private final Map<String, ChatMessage> byId = new HashMap<>();
+
+    // Vista de solo lectura para el adapter
+    public List<ChatMessage> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public ChatMessage get(int position) {
+        return messages.get(position);
+    }
+
+    public ChatMessage first() {
+        return messages.isEmpty() ? null : messages.get(0);
+    }
+
+    public ChatMessage last() {
+        return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+    }
+
+    public boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+
+    public ChatMessage find(String id) {
+        return byId.get(id);
+    }
+
+    // Devuelve la posición que ocupaba, o -1 si no estaba
+    public int remove(String id, Date date) {
+        int position = indexOf(id, date);
+        if (position >= 0) {
+            messages.remove(position);
+            byId.remove(id);
+        }
+        return position;
+    }
+
+    public int remove(String id) {
+        ChatMessage current = byId.get(id);
+        return current != null ? remove(id, current.dateObject) : -1;
+    }
+
+    /**
+     * Reemplaza en su lugar al mensaje con el mismo id y devuelve su posición, o -1 si no estaba.
+     * Las ediciones no cambian la fecha, así que el orden se mantiene.
+     */
+    public int replace(ChatMessage chatMessage) {
+        ChatMessage current = byId.get(chatMessage.id);
+        if (current == null) {
+            return -1;
+        }
+        int position = indexOf(chatMessage.id, current.dateObject);
+        if (position < 0 || !current.dateObject.equals(chatMessage.dateObject)) {
+            return -1;
+        }
+        messages.set(position, chatMessage);
+        byId.put(chatMessage.id, chatMessage);
+        return position;
+    }
+
+    // Devuelve la posición insertada, o -1 si el mensaje ya estaba
+    public int insert(ChatMessage chatMessage) {
+        if (chatMessage.id != null) {
+            if (byId.containsKey(chatMessage.id)) {
+                return -1;
+            }
+            byId.put(chatMessage.id, chatMessage);
+        }
+        int position = upperBound(chatMessage.dateObject, 0);
+        messages.add(position, chatMessage);
+        return position;
+    }
+
+    /**
+     * Mezcla un lote de mensajes con la lista actual y avisa al listener con los rangos exactos
+     * insertados. El lote no necesita venir ordenado y los ids repetidos se descartan.
+     */
+    public void insertAll(List<ChatMessage> batch, Listener listener) {
+        List<ChatMessage> sorted = new ArrayList<>(batch.size());
+        for (ChatMessage chatMessage : batch) {
+            if (chatMessage.id == null) {
+                sorted.add(chatMessage);
+            } else if (!byId.containsKey(chatMessage.id)) {
+                byId.put(chatMessage.id, chatMessage);
+                sorted.add(chatMessage);
+            }
+        }
+        if (sorted.isEmpty()) {
+            return;
+        }
+        Collections.sort(sorted, (obj1, obj2) -> obj1.dateObject.compareTo(obj2.dateObject));
+
+        // Caso común: todo el lote es más nuevo que el último mensaje
+        ChatMessage last = last();
+        if (last == null || last.dateObject.compareTo(sorted.get(0).dateObject) <= 0) {
+            int start = messages.size();
+            messages.addAll(sorted);
+            listener.onInserted(start, sorted.size());
+            return;
+        }
+
+        // Como el lote está ordenado, cada búsqueda empieza donde terminó la anterior
+        int rangeStart = -1;
+        int rangeCount = 0;
+        int from = 0;
+        for (ChatMessage chatMessage : sorted) {
+            int position = upperBound(chatMessage.dateObject, from);
+            messages.add(position, chatMessage);
+            from = position + 1;
+            if (rangeCount > 0 && position == rangeStart + rangeCount) {
+                rangeCount++;
+            } else {
+                if (rangeCount > 0) {
+                    listener.onInserted(rangeStart, rangeCount);
+                }
+                rangeStart = position;
+                rangeCount = 1;
+            }
+        }
+        listener.onInserted(rangeStart, rangeCount);
+    }
+
+    // Posición del mensaje con ese id y esa fecha, o -1 si no está
+    public int indexOf(String id, Date date) {
+        int low = 0;
+        int high = messages.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (messages.get(mid).dateObject.compareTo(date) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < messages.size() && messages.get(i).dateObject.equals(date); i++) {
+            if (id.equals(messages.get(i).id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Primera posición cuya fecha es estrictamente mayor; los empates conservan el orden de llegada
+    private int upperBound(Date date, int from) {
+        int low = from;
+        int high = messages.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (messages.get(mid).dateObject.compareTo(date) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
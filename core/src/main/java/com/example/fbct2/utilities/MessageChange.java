@@ -0,0 +1,37 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.Date;
+
+// Un documento de mensaje que entró, cambió o salió del resultado de un listener
+public class MessageChange {
+
+    public enum Type {
+        ADDED, MODIFIED, REMOVED
+    }
+
+    public final Type type;
+    public final String messageId;
+    // Estado actual; null si el tipo es REMOVED
+    public final ChatMessage message;
+    public final boolean deleted;
+    // Último cambio según el servidor; null si no tiene o si la escritura aún no se confirmó
+    public final Date updatedAt;
+    // Leído de la caché local: el resultado puede tener huecos respecto de lo que hay en el servidor
+    public final boolean fromCache;
+
+    public MessageChange(Type type, String messageId, ChatMessage message, boolean deleted, Date updatedAt) {
+        this(type, messageId, message, deleted, updatedAt, false);
+    }
+
+    public MessageChange(Type type, String messageId, ChatMessage message, boolean deleted, Date updatedAt,
+                         boolean fromCache) {
+        this.type = type;
+        this.messageId = messageId;
+        this.message = message;
+        this.deleted = deleted;
+        this.updatedAt = updatedAt;
+        this.fromCache = fromCache;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Separa un snapshot en los tres deltas que aplica el almacén: mensajes nuevos, mensajes modificados y
+ * ids a quitar. Un borrado lógico cuenta como quitado y un mensaje sin fecha (escritura pendiente de
+ * otro cliente) se ignora hasta que llegue con ella.
+ */
+public class MessageChanges {
+
+    public final List<ChatMessage> added = new ArrayList<>();
+    public final List<ChatMessage> changed = new ArrayList<>();
+    public final List<String> removed = new ArrayList<>();
+
+    private MessageChanges() {
+    }
+
+    public static MessageChanges of(List<MessageChange> snapshot) {
+        MessageChanges changes = new MessageChanges();
+        for (MessageChange change : snapshot) {
+            if (change.type == MessageChange.Type.REMOVED || change.deleted) {
+                changes.removed.add(change.messageId);
+            } else if (change.message.dateObject != null) {
+                if (change.type == MessageChange.Type.ADDED) {
+                    changes.added.add(change.message);
+                } else {
+                    changes.changed.add(change.message);
+                }
+            }
+        }
+        return changes;
+    }
+}
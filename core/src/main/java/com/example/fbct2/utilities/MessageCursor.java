@@ -0,0 +1,31 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.Date;
+
+/**
+ * Posición de un mensaje en el orden de la conversación. Dos mensajes pueden compartir el milisegundo, así
+ * que la fecha sola no alcanza como borde de página: el id del documento desempata, igual que en Firestore.
+ */
+public class MessageCursor implements Comparable<MessageCursor> {
+
+    public final Date timestamp;
+    public final String id;
+
+    public MessageCursor(Date timestamp, String id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static MessageCursor of(ChatMessage chatMessage) {
+        return new MessageCursor(chatMessage.dateObject, chatMessage.id);
+    }
+
+    // Orden de Firestore con orderBy(timestamp) seguido de orderBy(documentId)
+    @Override
+    public int compareTo(MessageCursor other) {
+        int byTimestamp = timestamp.compareTo(other.timestamp);
+        return byTimestamp != 0 ? byTimestamp : id.compareTo(other.id);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forma de los documentos de `chat`, compartida por el cliente Android y el backend del emulador. Las
+ * fechas llegan aparte y los centinelas (serverTimestamp, delete) se reciben como parámetro porque cada
+ * SDK de Firestore tiene sus propios tipos.
+ */
+public class MessageDocuments {
+
+    private MessageDocuments() {
+    }
+
+    public static HashMap<String, Object> toDocument(String conversationKey, ChatMessage chatMessage) {
+        HashMap<String, Object> message = new HashMap<>();
+        message.put(Constants.KEY_SENDER_ID, chatMessage.senderId);
+        message.put(Constants.KEY_RECEIVER_ID, chatMessage.receiverId);
+        message.put(Constants.KEY_CONVERSATION_KEY, conversationKey);
+        message.put(Constants.KEY_MESSAGE, chatMessage.message);
+        message.put(Constants.KEY_TIMESTAMP, chatMessage.dateObject);
+        return message;
+    }
+
+    public static ChatMessage fromDocument(String id, Map<String, Object> data, Date timestamp, boolean pending) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.senderId = stringOf(data.get(Constants.KEY_SENDER_ID));
+        chatMessage.receiverId = stringOf(data.get(Constants.KEY_RECEIVER_ID));
+        chatMessage.message = stringOf(data.get(Constants.KEY_MESSAGE));
+        chatMessage.dateObject = timestamp;
+        chatMessage.pending = pending;
+        chatMessage.edited = Boolean.TRUE.equals(data.get(Constants.KEY_EDITED));
+        Object reactions = data.get(Constants.KEY_REACTIONS);
+        if (reactions instanceof Map && !((Map<?, ?>) reactions).isEmpty()) {
+            chatMessage.reactions = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) reactions).entrySet()) {
+                chatMessage.reactions.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+            }
+        }
+        return chatMessage;
+    }
+
+    public static boolean isDeleted(Map<String, Object> data) {
+        return Boolean.TRUE.equals(data.get(Constants.KEY_DELETED));
+    }
+
+    // Un serverTimestamp sin confirmar no es una fecha del servidor, así que updatedAt queda en null
+    public static MessageChange toChange(MessageChange.Type type, String id, Map<String, Object> data, Date timestamp,
+                                         Date updatedAt, boolean pending, boolean fromCache) {
+        if (type == MessageChange.Type.REMOVED) {
+            return new MessageChange(MessageChange.Type.REMOVED, id, null, false, null, fromCache);
+        }
+        return new MessageChange(type, id, fromDocument(id, data, timestamp, pending), isDeleted(data),
+                pending ? null : updatedAt, fromCache);
+    }
+
+    // Documentos de una página leída de la más nueva a la más vieja, en orden ascendente y sin borrados
+    public static MessagePage toPage(List<MessageChange> newestFirst, int limit) {
+        MessageCursor newest = null;
+        List<ChatMessage> page = new ArrayList<>();
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            MessageChange document = newestFirst.get(i);
+            if (document.message.dateObject == null) {
+                continue;
+            }
+            newest = MessageCursor.of(document.message);
+            if (!document.deleted) {
+                page.add(document.message);
+            }
+        }
+        return new MessagePage(page, newestFirst.size() >= limit, newest);
+    }
+
+    public static Map<String, Object> lastMessageFields(String lastMessage, Date timestamp) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(Constants.KEY_LAST_MESSAGE, lastMessage);
+        fields.put(Constants.KEY_TIMESTAMP, timestamp);
+        return fields;
+    }
+
+    // Documento completo de una conversación nueva: participantes más el último mensaje
+    public static Map<String, Object> newConversationFields(Map<String, Object> participants,
+                                                            Map<String, Object> lastMessageFields) {
+        Map<String, Object> fields = new HashMap<>(participants);
+        fields.putAll(lastMessageFields);
+        return fields;
+    }
+
+    public static Map<String, Object> editFields(String text, Object serverTimestamp) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(Constants.KEY_MESSAGE, text);
+        fields.put(Constants.KEY_EDITED, true);
+        fields.put(Constants.KEY_UPDATED_AT, serverTimestamp);
+        return fields;
+    }
+
+    public static Map<String, Object> deleteFields(Object serverTimestamp, Object deleteField) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(Constants.KEY_DELETED, true);
+        fields.put(Constants.KEY_MESSAGE, "");
+        fields.put(Constants.KEY_REACTIONS, deleteField);
+        fields.put(Constants.KEY_UPDATED_AT, serverTimestamp);
+        return fields;
+    }
+
+    // Las claves de update() son rutas separadas por puntos; los ids de usuario no llevan puntos
+    public static Map<String, Object> reactionFields(String userId, String emoji, Object serverTimestamp,
+                                                     Object deleteField) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(Constants.KEY_REACTIONS + "." + userId, emoji != null ? emoji : deleteField);
+        fields.put(Constants.KEY_UPDATED_AT, serverTimestamp);
+        return fields;
+    }
+
+    private static String stringOf(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+}
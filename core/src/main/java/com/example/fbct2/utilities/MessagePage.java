@@ -0,0 +1,34 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import java.util.Collections;
+import java.util.List;
+
+public class MessagePage {
+
+    // En orden ascendente
+    public final List<ChatMessage> messages;
+    // false cuando el servidor ya no tiene mensajes más viejos
+    public final boolean hasMore;
+    // Documento más nuevo leído, borrados incluidos; null si la página no trajo ninguno
+    public final MessageCursor newest;
+    // La lectura no llegó al servidor: una página vacía no significa que no haya mensajes
+    public final boolean failed;
+
+    public MessagePage(List<ChatMessage> messages, boolean hasMore, MessageCursor newest) {
+        this(messages, hasMore, newest, false);
+    }
+
+    private MessagePage(List<ChatMessage> messages, boolean hasMore, MessageCursor newest, boolean failed) {
+        this.messages = messages;
+        this.hasMore = hasMore;
+        this.newest = newest;
+        this.failed = failed;
+    }
+
+    // Una lectura fallida no permite saber si hay más; se deja la puerta abierta para reintentar
+    public static MessagePage failed() {
+        return new MessagePage(Collections.emptyList(), true, null, true);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.fbct2.utilities;
+
+import java.util.Date;
+
+/**
+ * Las consultas sobre `chat`, descritas una sola vez. FirestoreChatBackend y el backend del emulador usan
+ * SDKs distintos (el cliente Android y el de servidor), así que cada uno solo traduce estas operaciones
+ * a su propio tipo de Query.
+ */
+public abstract class MessageQueries<Q> {
+
+    protected abstract Q messages();
+
+    protected abstract Q whereEqualTo(Q query, String field, Object value);
+
+    protected abstract Q whereGreaterThan(Q query, String field, Object value);
+
+    protected abstract Q orderBy(Q query, String field, boolean descending);
+
+    protected abstract Q orderByDocumentId(Q query, boolean descending);
+
+    // Valores en el mismo orden que los orderBy del query
+    protected abstract Q startAfter(Q query, Object... values);
+
+    protected abstract Q limit(Q query, int limit);
+
+    // Un solo query ordenado por el servidor cubre ambas direcciones de la conversación
+    public Q conversation(String conversationKey) {
+        return whereEqualTo(messages(), Constants.KEY_CONVERSATION_KEY, conversationKey);
+    }
+
+    /**
+     * Página anterior a `before` (null para la más reciente), de la más nueva a la más vieja. El id desempata
+     * los mensajes del mismo milisegundo, así ninguno queda del otro lado del borde sin leerse; el índice
+     * (conversationKey, timestamp) ya ordena por id en la misma dirección.
+     */
+    public Q page(String conversationKey, MessageCursor before, int limit) {
+        Q query = orderByDocumentId(orderBy(conversation(conversationKey), Constants.KEY_TIMESTAMP, true), true);
+        if (before != null) {
+            query = startAfter(query, before.timestamp, before.id);
+        }
+        return limit(query, limit);
+    }
+
+    public Q newMessages(String conversationKey, MessageCursor after) {
+        Q query = orderByDocumentId(orderBy(conversation(conversationKey), Constants.KEY_TIMESTAMP, false), false);
+        if (after != null) {
+            query = startAfter(query, after.timestamp, after.id);
+        }
+        return query;
+    }
+
+    // Necesita el índice compuesto (conversationKey, updatedAt)
+    public Q updates(String conversationKey, Date since) {
+        return orderBy(whereGreaterThan(conversation(conversationKey), Constants.KEY_UPDATED_AT,
+                since != null ? since : new Date(0)), Constants.KEY_UPDATED_AT, false);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.fbct2.utilities;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Contadores e histogramas de duración para los caminos calientes. Registrar un valor no reserva memoria:
+ * cada métrica se busca una sola vez por nombre y se guarda en un campo estático de quien la usa.
+ * Pensado para quedar activo en producción; el costo de un record() es un par de operaciones atómicas.
+ */
+public class Metrics {
+
+    private static final Metrics instance = new Metrics();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.value.set(0);
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    // Una línea por métrica, ordenadas por nombre; las duraciones en milisegundos
+    public void dump(Appendable out) throws IOException {
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            out.append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue().get())).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.count();
+            out.append(entry.getKey()).append(" count=").append(String.valueOf(count));
+            if (count > 0) {
+                out.append(String.format(Locale.US, " mean=%.2f p50=%.2f p95=%.2f p99=%.2f max=%.2f",
+                        histogram.mean() / 1e6, histogram.percentile(50) / 1e6, histogram.percentile(95) / 1e6,
+                        histogram.percentile(99) / 1e6, histogram.max() / 1e6));
+            }
+            out.append('\n');
+        }
+    }
+
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        try {
+            dump(out);
+        } catch (IOException e) {
+            // StringBuilder no lanza
+        }
+        return out.toString();
+    }
+
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Histograma logarítmico de valores no negativos (en la app, nanosegundos). Cada potencia de dos se parte
+     * en cuatro cubetas, así un percentil nunca se aleja más de un 25% del valor real, con 248 cubetas fijas.
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(bucketOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // Otro hilo lo cambió; se vuelve a comparar
+            }
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        public double mean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        // Límite superior de la cubeta donde cae el percentil, acotado por el máximo visto
+        public long percentile(double p) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        // Los valores menores a 4 tienen cubeta propia; del resto se usan los dos bits tras el más alto
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+}
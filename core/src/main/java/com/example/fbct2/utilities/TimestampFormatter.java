@@ -0,0 +1,23 @@
+package com.example.fbct2.utilities;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+
+// Fecha legible de un mensaje. El formateador es inmutable: se crea una vez por pantalla y no por cada mensaje
+public class TimestampFormatter {
+
+    private static final String PATTERN = "MMMM dd, yyyy - hh:mm a";
+
+    private final DateTimeFormatter formatter;
+
+    public TimestampFormatter(Locale locale, ZoneId zone) {
+        formatter = DateTimeFormatter.ofPattern(PATTERN, locale).withZone(zone);
+    }
+
+    public String format(Date date) {
+        return formatter.format(Instant.ofEpochMilli(date.getTime()));
+    }
+}
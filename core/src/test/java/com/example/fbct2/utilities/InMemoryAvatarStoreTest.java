@@ -0,0 +1,23 @@
+package com.example.fbct2.utilities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InMemoryAvatarStoreTest {
+
+    @Test
+    public void put_returnsContentHashAndStoresOnce() {
+        InMemoryAvatarStore store = new InMemoryAvatarStore();
+        String first = store.put("/9j/4AAQSkZJRgABAQ");
+        String second = store.put("/9j/4AAQSkZJRgABAQ");
+        Assert.assertEquals(AvatarHash.of("/9j/4AAQSkZJRgABAQ"), first);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals("/9j/4AAQSkZJRgABAQ", store.fetch(first));
+    }
+
+    @Test
+    public void fetch_unknownIdReturnsNull() {
+        Assert.assertNull(new InMemoryAvatarStore().fetch("missing"));
+    }
+}
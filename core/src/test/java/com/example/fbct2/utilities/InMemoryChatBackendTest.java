@@ -0,0 +1,158 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class InMemoryChatBackendTest {
+
+    private static final String KEY = ConversationKeys.of("a", "b");
+
+    @Test
+    public void listener_seesAddedThenModifiedThenDeleted() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        List<List<MessageChange>> snapshots = new ArrayList<>();
+        backend.listenMessages(KEY, null, snapshots::add);
+
+        ChatMessage sent = send(backend, "hola", new Date(backend.now()));
+        backend.editMessage(sent.id, "hola!", success -> Assert.assertTrue(success));
+        backend.deleteMessage(sent.id, success -> Assert.assertTrue(success));
+
+        Assert.assertEquals(3, snapshots.size());
+        MessageChange added = snapshots.get(0).get(0);
+        Assert.assertEquals(MessageChange.Type.ADDED, added.type);
+        Assert.assertEquals("hola", added.message.message);
+        MessageChange edited = snapshots.get(1).get(0);
+        Assert.assertEquals(MessageChange.Type.MODIFIED, edited.type);
+        Assert.assertEquals("hola!", edited.message.message);
+        Assert.assertTrue(edited.message.edited);
+        Assert.assertNotNull(edited.updatedAt);
+        MessageChange deleted = snapshots.get(2).get(0);
+        Assert.assertEquals(MessageChange.Type.MODIFIED, deleted.type);
+        Assert.assertTrue(deleted.deleted);
+        Assert.assertEquals(Collections.singletonList(sent.id), MessageChanges.of(snapshots.get(2)).removed);
+    }
+
+    @Test
+    public void updatesListener_onlySeesMessagesChangedAfterSince() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        ChatMessage first = send(backend, "uno", new Date(backend.now()));
+        ChatMessage second = send(backend, "dos", new Date(backend.now()));
+        backend.editMessage(first.id, "uno!", success -> { });
+        Date since = new Date(backend.now());
+        backend.setReaction(second.id, "a", "👍", success -> { });
+
+        List<List<MessageChange>> snapshots = new ArrayList<>();
+        backend.listenMessageUpdates(KEY, since, snapshots::add);
+
+        Assert.assertEquals(1, snapshots.size());
+        Assert.assertEquals(1, snapshots.get(0).size());
+        Assert.assertEquals(second.id, snapshots.get(0).get(0).messageId);
+        Assert.assertEquals("👍", snapshots.get(0).get(0).message.reactions.get("a"));
+    }
+
+    @Test
+    public void batch_isInvisibleUntilCommitAndArrivesAsOneSnapshot() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        List<List<MessageChange>> snapshots = new ArrayList<>();
+        backend.listenMessages(KEY, null, snapshots::add);
+
+        ChatBackend.Batch batch = backend.batch();
+        Date date = new Date(backend.now());
+        for (int i = 0; i < 3; i++) {
+            batch.setMessage(KEY, message(backend.newMessageId(), "m" + i, date));
+        }
+        batch.createOrUpdateConversation(KEY, participants(), "m2", date);
+        Assert.assertEquals(0, backend.messageCount());
+        Assert.assertNull(backend.conversation(KEY));
+        Assert.assertTrue(snapshots.isEmpty());
+
+        boolean[] committed = new boolean[1];
+        batch.commit(success -> committed[0] = success);
+
+        Assert.assertTrue(committed[0]);
+        Assert.assertEquals(3, backend.messageCount());
+        Assert.assertEquals(1, snapshots.size());
+        Assert.assertEquals(3, MessageChanges.of(snapshots.get(0)).added.size());
+        Assert.assertEquals("m2", backend.conversation(KEY).get("lastMessage"));
+    }
+
+    @Test
+    public void createOrUpdateConversation_keepsParticipantsOfExistingConversation() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        ChatBackend.Batch first = backend.batch();
+        first.createOrUpdateConversation(KEY, participants(), "hola", new Date(backend.now()));
+        first.commit(success -> { });
+
+        Map<String, Object> swapped = new HashMap<>();
+        swapped.put(Constants.KEY_SENDER_ID, "b");
+        swapped.put(Constants.KEY_RECEIVER_ID, "a");
+        ChatBackend.Batch second = backend.batch();
+        second.createOrUpdateConversation(KEY, swapped, "chau", new Date(backend.now()));
+        second.commit(success -> { });
+
+        Map<String, Object> conversation = backend.conversation(KEY);
+        Assert.assertEquals("a", conversation.get(Constants.KEY_SENDER_ID));
+        Assert.assertEquals("b", conversation.get(Constants.KEY_RECEIVER_ID));
+        Assert.assertEquals("chau", conversation.get(Constants.KEY_LAST_MESSAGE));
+    }
+
+    @Test
+    public void loadMessages_pagesThroughMessagesSharingAMillisecond() {
+        InMemoryChatBackend backend = new InMemoryChatBackend();
+        Date date = new Date(backend.now());
+        for (int i = 0; i < 5; i++) {
+            send(backend, "m" + i, date);
+        }
+
+        List<String> ids = new ArrayList<>();
+        MessageCursor[] before = {null};
+        boolean[] hasMore = {true};
+        while (hasMore[0]) {
+            backend.loadMessages(KEY, before[0], 2, page -> {
+                for (int i = page.messages.size() - 1; i >= 0; i--) {
+                    ids.add(page.messages.get(i).id);
+                }
+                before[0] = MessageCursor.of(page.messages.get(0));
+                hasMore[0] = page.hasMore;
+            });
+        }
+
+        Assert.assertEquals(5, ids.size());
+        Assert.assertEquals(5, new HashSet<>(ids).size());
+    }
+
+    private static ChatMessage send(InMemoryChatBackend backend, String text, Date date) {
+        ChatMessage chatMessage = message(backend.newMessageId(), text, date);
+        ChatBackend.Batch batch = backend.batch();
+        batch.setMessage(KEY, chatMessage);
+        batch.commit(success -> { });
+        return chatMessage;
+    }
+
+    private static ChatMessage message(String id, String text, Date date) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.senderId = "a";
+        chatMessage.receiverId = "b";
+        chatMessage.message = text;
+        chatMessage.dateObject = date;
+        return chatMessage;
+    }
+
+    private static Map<String, Object> participants() {
+        Map<String, Object> participants = new HashMap<>();
+        participants.put(Constants.KEY_SENDER_ID, "a");
+        participants.put(Constants.KEY_RECEIVER_ID, "b");
+        return participants;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.fbct2.utilities;
+
+import com.example.fbct2.models.ChatMessage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+public class MessageChangesTest {
+
+    @Test
+    public void of_splitsSnapshotByChangeType() {
+        MessageChanges changes = MessageChanges.of(Arrays.asList(
+                change(MessageChange.Type.ADDED, "added", new Date(1), false),
+                change(MessageChange.Type.MODIFIED, "modified", new Date(2), false),
+                new MessageChange(MessageChange.Type.REMOVED, "removed", null, false, null),
+                change(MessageChange.Type.MODIFIED, "deleted", new Date(3), true)));
+
+        Assert.assertEquals("added", changes.added.get(0).id);
+        Assert.assertEquals(1, changes.added.size());
+        Assert.assertEquals("modified", changes.changed.get(0).id);
+        Assert.assertEquals(1, changes.changed.size());
+        Assert.assertEquals(Arrays.asList("removed", "deleted"), changes.removed);
+    }
+
+    @Test
+    public void of_ignoresMessagesWithoutDateUntilTheyHaveOne() {
+        MessageChanges changes = MessageChanges.of(Collections.singletonList(
+                change(MessageChange.Type.ADDED, "pending", null, false)));
+
+        Assert.assertTrue(changes.added.isEmpty());
+        Assert.assertTrue(changes.changed.isEmpty());
+        Assert.assertTrue(changes.removed.isEmpty());
+    }
+
+    private static MessageChange change(MessageChange.Type type, String id, Date date, boolean deleted) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.id = id;
+        chatMessage.dateObject = date;
+        return new MessageChange(type, id, chatMessage, deleted, null);
+    }
+}
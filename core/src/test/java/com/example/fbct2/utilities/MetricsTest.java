@@ -0,0 +1,33 @@
+package com.example.fbct2.utilities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void bucketOf_valueIsWithinItsBucketUpperBound() {
+        long[] values = {0, 1, 3, 4, 5, 7, 8, 9, 1_000, 999_999, 1L << 40, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = Metrics.Histogram.bucketOf(value);
+            Assert.assertTrue(bucket < Metrics.Histogram.BUCKETS);
+            Assert.assertTrue(value <= Metrics.Histogram.upperBoundOf(bucket));
+            if (bucket > 0) {
+                Assert.assertTrue(value > Metrics.Histogram.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentile_staysWithinBucketError() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000);
+        }
+        Assert.assertEquals(1000, histogram.count());
+        Assert.assertEquals(1_000_000, histogram.max());
+        long p50 = histogram.percentile(50);
+        Assert.assertTrue(p50 >= 500_000 && p50 <= 625_000);
+        Assert.assertEquals(1_000_000, histogram.percentile(100));
+    }
+}
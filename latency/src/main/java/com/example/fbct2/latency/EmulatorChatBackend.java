@@ -0,0 +1,266 @@
+package com.example.fbct2.latency;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.ChatBackend;
+import com.example.fbct2.utilities.Constants;
+import com.example.fbct2.utilities.MessageChange;
+import com.example.fbct2.utilities.MessageCursor;
+import com.example.fbct2.utilities.MessageDocuments;
+import com.example.fbct2.utilities.MessagePage;
+import com.example.fbct2.utilities.MessageQueries;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traducción al SDK de servidor de lo que hace FirestoreChatBackend: las consultas (MessageQueries) y la
+ * forma de los documentos (MessageDocuments) son las mismas de :core. Cuenta los documentos leídos: cada
+ * cambio de un snapshot y cada documento de una página. Callbacks y listeners se entregan en `executor`,
+ * que hace de hilo principal del cliente simulado.
+ */
+public class EmulatorChatBackend implements ChatBackend {
+
+    private final Firestore database;
+    private final Executor executor;
+    private final AtomicLong documentsRead = new AtomicLong();
+    private final MessageQueries<Query> queries = new MessageQueries<Query>() {
+        @Override
+        protected Query messages() {
+            return database.collection(Constants.KEY_COLLECTION_CHAT);
+        }
+
+        @Override
+        protected Query whereEqualTo(Query query, String field, Object value) {
+            return query.whereEqualTo(field, value);
+        }
+
+        @Override
+        protected Query whereGreaterThan(Query query, String field, Object value) {
+            return query.whereGreaterThan(field, value);
+        }
+
+        @Override
+        protected Query orderBy(Query query, String field, boolean descending) {
+            return query.orderBy(field, descending ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        }
+
+        @Override
+        protected Query orderByDocumentId(Query query, boolean descending) {
+            return query.orderBy(FieldPath.documentId(),
+                    descending ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        }
+
+        @Override
+        protected Query startAfter(Query query, Object... values) {
+            return query.startAfter(values);
+        }
+
+        @Override
+        protected Query limit(Query query, int limit) {
+            return query.limit(limit);
+        }
+    };
+
+    public EmulatorChatBackend(Firestore database, Executor executor) {
+        this.database = database;
+        this.executor = executor;
+    }
+
+    public long documentsRead() {
+        return documentsRead.get();
+    }
+
+    // Igual que en FirestoreChatBackend: transacción solo si la conversación puede no existir todavía
+    private class EmulatorBatch implements Batch {
+        private final Map<DocumentReference, Map<String, Object>> messages = new LinkedHashMap<>();
+        private DocumentReference conversation;
+        private Map<String, Object> lastMessage;
+        // Solo si la conversación puede no existir todavía
+        private Map<String, Object> participants;
+
+        @Override
+        public void setMessage(String conversationKey, ChatMessage chatMessage) {
+            messages.put(messageDocument(chatMessage.id), MessageDocuments.toDocument(conversationKey, chatMessage));
+        }
+
+        @Override
+        public void updateConversation(String conversionId, String lastMessage, Date timestamp) {
+            conversation = conversationDocument(conversionId);
+            this.lastMessage = MessageDocuments.lastMessageFields(lastMessage, timestamp);
+            participants = null;
+        }
+
+        @Override
+        public void createOrUpdateConversation(String conversionId, Map<String, Object> participants,
+                                               String lastMessage, Date timestamp) {
+            updateConversation(conversionId, lastMessage, timestamp);
+            this.participants = new HashMap<>(participants);
+        }
+
+        @Override
+        public void commit(Completion completion) {
+            if (participants == null) {
+                WriteBatch batch = database.batch();
+                for (Map.Entry<DocumentReference, Map<String, Object>> message : messages.entrySet()) {
+                    batch.set(message.getKey(), message.getValue());
+                }
+                if (conversation != null) {
+                    batch.update(conversation, lastMessage);
+                }
+                complete(batch.commit(), completion);
+                return;
+            }
+            complete(database.runTransaction(transaction -> {
+                boolean exists = transaction.get(conversation).get().exists();
+                for (Map.Entry<DocumentReference, Map<String, Object>> message : messages.entrySet()) {
+                    transaction.set(message.getKey(), message.getValue());
+                }
+                if (exists) {
+                    transaction.update(conversation, lastMessage);
+                } else {
+                    transaction.set(conversation, MessageDocuments.newConversationFields(participants, lastMessage));
+                }
+                return null;
+            }), completion);
+        }
+    }
+
+    @Override
+    public String newMessageId() {
+        return database.collection(Constants.KEY_COLLECTION_CHAT).document().getId();
+    }
+
+    @Override
+    public Batch batch() {
+        return new EmulatorBatch();
+    }
+
+    @Override
+    public void loadMessages(String conversationKey, MessageCursor before, int limit,
+                             Callback<MessagePage> callback) {
+        ApiFutures.addCallback(queries.page(conversationKey, before, limit).get(), new ApiFutureCallback<QuerySnapshot>() {
+            @Override
+            public void onFailure(Throwable t) {
+                callback.onResult(MessagePage.failed());
+            }
+
+            @Override
+            public void onSuccess(QuerySnapshot snapshot) {
+                documentsRead.addAndGet(snapshot.size());
+                List<MessageChange> documents = new ArrayList<>();
+                for (DocumentSnapshot document : snapshot.getDocuments()) {
+                    documents.add(toChange(MessageChange.Type.ADDED, document));
+                }
+                callback.onResult(MessageDocuments.toPage(documents, limit));
+            }
+        }, executor);
+    }
+
+    @Override
+    public Registration listenMessages(String conversationKey, MessageCursor after, ChangeListener listener) {
+        return listen(queries.newMessages(conversationKey, after), listener);
+    }
+
+    @Override
+    public Registration listenMessageUpdates(String conversationKey, Date since, ChangeListener listener) {
+        return listen(queries.updates(conversationKey, since), listener);
+    }
+
+    @Override
+    public void editMessage(String messageId, String text, Completion completion) {
+        complete(messageDocument(messageId).update(
+                MessageDocuments.editFields(text, FieldValue.serverTimestamp())), completion);
+    }
+
+    @Override
+    public void deleteMessage(String messageId, Completion completion) {
+        complete(messageDocument(messageId).update(
+                MessageDocuments.deleteFields(FieldValue.serverTimestamp(), FieldValue.delete())), completion);
+    }
+
+    @Override
+    public void setReaction(String messageId, String userId, String emoji, Completion completion) {
+        complete(messageDocument(messageId).update(MessageDocuments.reactionFields(userId, emoji,
+                FieldValue.serverTimestamp(), FieldValue.delete())), completion);
+    }
+
+    @Override
+    public void updateLastMessage(String conversionId, String text) {
+        conversationDocument(conversionId).update(Constants.KEY_LAST_MESSAGE, text);
+    }
+
+    // En el emulador solo hay documentos escritos con la clave canónica
+    @Override
+    public void migrateConversation(String userId, String otherUserId, Completion completion) {
+        executor.execute(() -> completion.onComplete(true));
+    }
+
+    private Registration listen(Query query, ChangeListener listener) {
+        ListenerRegistration registration = query.addSnapshotListener(executor, (value, error) -> {
+            if (error != null || value == null) {
+                return;
+            }
+            List<MessageChange> changes = new ArrayList<>();
+            for (DocumentChange documentChange : value.getDocumentChanges()) {
+                documentsRead.incrementAndGet();
+                MessageChange.Type type = documentChange.getType() == DocumentChange.Type.REMOVED
+                        ? MessageChange.Type.REMOVED
+                        : documentChange.getType() == DocumentChange.Type.ADDED
+                        ? MessageChange.Type.ADDED : MessageChange.Type.MODIFIED;
+                changes.add(toChange(type, documentChange.getDocument()));
+            }
+            if (!changes.isEmpty()) {
+                listener.onChanges(changes);
+            }
+        });
+        return registration::remove;
+    }
+
+    // Sin caché local en el SDK de servidor: nada llega de la caché ni con escrituras pendientes
+    private static MessageChange toChange(MessageChange.Type type, DocumentSnapshot document) {
+        Map<String, Object> data = document.getData();
+        return MessageDocuments.toChange(type, document.getId(), data != null ? data : new HashMap<>(),
+                document.getDate(Constants.KEY_TIMESTAMP), document.getDate(Constants.KEY_UPDATED_AT), false, false);
+    }
+
+    private <T> void complete(ApiFuture<T> future, Completion completion) {
+        ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+            @Override
+            public void onFailure(Throwable t) {
+                completion.onComplete(false);
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                completion.onComplete(true);
+            }
+        }, executor);
+    }
+
+    private DocumentReference messageDocument(String messageId) {
+        return database.collection(Constants.KEY_COLLECTION_CHAT).document(messageId);
+    }
+
+    private DocumentReference conversationDocument(String conversionId) {
+        return database.collection(Constants.KEY_COLLECTION_CONVERSATIONS).document(conversionId);
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.fbct2.latency;
+
+import com.example.fbct2.models.ChatMessage;
+import com.example.fbct2.utilities.ChatBackend;
+import com.example.fbct2.utilities.ChatSession;
+import com.example.fbct2.utilities.InMemoryKeyValueStore;
+import com.example.fbct2.utilities.MessageCursor;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Levanta N clientes contra el emulador de Firestore, cada uno con su propia conexión, emparejados de a dos
+ * como dos usuarios con el chat abierto. Cada cliente corre la misma ChatSession que ChatActivity sobre un
+ * almacén que solo anota cuándo llega cada mensaje del otro. La latencia es desde la fecha del mensaje hasta
+ * que la sesión del otro cliente lo guarda.
+ *
+ * Termina con 1 si se perdieron mensajes y con 2 si el p95 supera --max-p95-ms.
+ */
+public class LatencyHarness {
+
+    private static final String PROJECT_ID = "demo-fbct2";
+    // Margen para que los listeners queden activos antes del primer envío
+    private static final long WARMUP_MS = 1000;
+
+    private static class Client implements ChatSession.Store {
+        final String userId;
+        final String peerId;
+        final Firestore firestore;
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final EmulatorChatBackend backend;
+        final ChatSession session;
+        final CountDownLatch ready;
+        final CountDownLatch delivered;
+        // Solo se tocan desde `executor`
+        final Set<String> received = new HashSet<>();
+        final long[] latencies;
+        int count;
+        boolean loaded;
+
+        Client(String userId, String peerId, Firestore firestore, int messages, ScheduledExecutorService scheduler,
+               CountDownLatch ready, CountDownLatch delivered) {
+            this.userId = userId;
+            this.peerId = peerId;
+            this.firestore = firestore;
+            this.backend = new EmulatorChatBackend(firestore, executor);
+            this.latencies = new long[messages];
+            this.ready = ready;
+            this.delivered = delivered;
+            this.session = new ChatSession(backend, this, new InMemoryKeyValueStore(),
+                    (task, delayMs) -> scheduler.schedule(() -> executor.execute(task), delayMs, TimeUnit.MILLISECONDS),
+                    userId, peerId, Collections::emptyMap, new ChatSession.Listener() {
+                        @Override
+                        public void onMessageSent(ChatMessage chatMessage) {
+                        }
+
+                        @Override
+                        public void onSendFailed(ChatMessage chatMessage) {
+                            System.err.println("Falló el envío de " + chatMessage.id);
+                        }
+
+                        @Override
+                        public void onRemoteMessages() {
+                            if (!loaded) {
+                                loaded = true;
+                                ready.countDown();
+                            }
+                        }
+
+                        @Override
+                        public void onHistoryGap(MessageCursor oldestLoaded) {
+                        }
+                    });
+        }
+
+        @Override
+        public void upsertMessages(List<ChatMessage> messages) {
+            long now = System.currentTimeMillis();
+            for (ChatMessage chatMessage : messages) {
+                if (!peerId.equals(chatMessage.senderId) || chatMessage.dateObject == null
+                        || !received.add(chatMessage.id) || count >= latencies.length) {
+                    continue;
+                }
+                latencies[count++] = now - chatMessage.dateObject.getTime();
+                delivered.countDown();
+            }
+        }
+
+        @Override
+        public void applyMessageChanges(List<ChatMessage> changes, List<String> removedIds) {
+        }
+
+        @Override
+        public void markSent(String messageId) {
+        }
+
+        // Cada corrida usa ids nuevos, así que no hay nada pendiente de una sesión anterior
+        @Override
+        public void loadPendingMessages(String conversationKey, ChatBackend.Callback<List<ChatMessage>> callback) {
+            callback.onResult(Collections.emptyList());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = 10;
+        int messages = 20;
+        long intervalMs = 100;
+        long timeoutSeconds = 60;
+        long maxP95Ms = -1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--clients": clients = Integer.parseInt(args[i + 1]); break;
+                case "--messages": messages = Integer.parseInt(args[i + 1]); break;
+                case "--interval-ms": intervalMs = Long.parseLong(args[i + 1]); break;
+                case "--timeout": timeoutSeconds = Long.parseLong(args[i + 1]); break;
+                case "--max-p95-ms": maxP95Ms = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Argumento desconocido: " + args[i]);
+            }
+        }
+        // Los clientes van de a pares
+        clients += clients % 2;
+        String host = System.getenv("FIRESTORE_EMULATOR_HOST");
+        if (host == null || host.isEmpty()) {
+            host = "localhost:8080";
+        }
+        System.exit(run(host, clients, messages, intervalMs, timeoutSeconds, maxP95Ms));
+    }
+
+    private static int run(String host, int clientCount, int messages, long intervalMs, long timeoutSeconds,
+                           long maxP95Ms) throws Exception {
+        // Ids propios de esta corrida, así no se mezclan con documentos de corridas anteriores
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch ready = new CountDownLatch(clientCount);
+        CountDownLatch delivered = new CountDownLatch(clientCount * messages);
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            Firestore firestore = FirestoreOptions.getDefaultInstance().toBuilder()
+                    .setProjectId(PROJECT_ID)
+                    .setEmulatorHost(host)
+                    .setCredentials(NoCredentials.getInstance())
+                    .build()
+                    .getService();
+            clients.add(new Client(runId + "-u" + i, runId + "-u" + (i ^ 1), firestore, messages, scheduler,
+                    ready, delivered));
+        }
+
+        for (Client client : clients) {
+            client.executor.execute(() -> client.session.open(Collections.emptyList()));
+        }
+        if (!ready.await(timeoutSeconds, TimeUnit.SECONDS)) {
+            System.err.println("Los clientes no terminaron de cargar la conversación");
+            close(clients, scheduler);
+            return 1;
+        }
+        Thread.sleep(WARMUP_MS);
+
+        long started = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            for (Client client : clients) {
+                int index = m;
+                client.executor.execute(() -> client.session.send("mensaje " + index + " de " + client.userId));
+            }
+            Thread.sleep(intervalMs);
+        }
+        boolean complete = delivered.await(timeoutSeconds, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        // Las lecturas y latencias se juntan en el hilo de cada cliente para no competir con sus listeners
+        long[] all = new long[clientCount * messages];
+        int total = 0;
+        long documentsRead = 0;
+        for (Client client : clients) {
+            long[][] snapshot = new long[1][];
+            int[] count = new int[1];
+            CountDownLatch collected = new CountDownLatch(1);
+            client.executor.execute(() -> {
+                snapshot[0] = client.latencies.clone();
+                count[0] = client.count;
+                collected.countDown();
+            });
+            collected.await();
+            System.arraycopy(snapshot[0], 0, all, total, count[0]);
+            total += count[0];
+            documentsRead += client.backend.documentsRead();
+        }
+        close(clients, scheduler);
+
+        long[] latencies = Arrays.copyOf(all, total);
+        Arrays.sort(latencies);
+        int expected = clientCount * messages;
+        System.out.printf("clientes=%d mensajes=%d entregados=%d/%d tiempo=%dms%n",
+                clientCount, messages, total, expected, elapsedMs);
+        if (total > 0) {
+            System.out.printf("latencia ms p50=%d p95=%d p99=%d max=%d%n",
+                    percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                    latencies[total - 1]);
+        }
+        System.out.printf("lecturas=%d lecturas/mensaje=%.2f%n", documentsRead, (double) documentsRead / expected);
+
+        if (!complete || total < expected) {
+            System.err.println("Mensajes perdidos: " + (expected - total));
+            return 1;
+        }
+        if (maxP95Ms >= 0 && percentile(latencies, 95) > maxP95Ms) {
+            System.err.println("p95 por encima de " + maxP95Ms + "ms");
+            return 2;
+        }
+        return 0;
+    }
+
+    // Rango más cercano: el menor valor con al menos p% de las muestras a su izquierda o igual
+    private static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static void close(List<Client> clients, ScheduledExecutorService scheduler) throws Exception {
+        scheduler.shutdownNow();
+        for (Client client : clients) {
+            CountDownLatch closed = new CountDownLatch(1);
+            client.executor.execute(() -> {
+                client.session.close();
+                closed.countDown();
+            });
+            closed.await();
+            client.executor.shutdown();
+            client.firestore.close();
+        }
+    }
+}